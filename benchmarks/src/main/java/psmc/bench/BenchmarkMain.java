@@ -0,0 +1,36 @@
+package psmc.bench;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+/**
+ * Punto di ingresso del jar dei benchmark. Accetta le opzioni di JMH e aggiunge sempre il
+ * profiler gc, cosi' che i risultati riportino anche la memoria allocata per operazione.
+ *
+ * @author  Mattia Paolacci
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws IOException, RunnerException, CommandLineOptionException {
+		CommandLineOptions cl = new CommandLineOptions(args);
+		if(cl.shouldHelp() || cl.shouldList() || cl.shouldListWithParams() || cl.shouldListProfilers()
+				|| cl.shouldListResultFormats()){
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		OptionsBuilder b = new OptionsBuilder();
+		b.parent(cl);
+		boolean gc = false;
+		for(ProfilerConfig p : cl.getProfilers())
+			gc |= p.getKlass().equals("gc") || p.getKlass().equals(GCProfiler.class.getName());
+		if(!gc) b.addProfiler(GCProfiler.class);
+		new Runner(b.build()).run();
+	}
+}
@@ -0,0 +1,114 @@
+package psmc.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import psmc.Options;
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Operazioni elementari di un'istanza: costruzione, calcolo dei valori legali, copia e
+ * assegnamento con propagazione, sia su copia che sul posto con checkpoint e rollback.
+ * Ogni chiamata usa il sudoku successivo dell'insieme.
+ *
+ * @author  Mattia Paolacci
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+	@Param({"object", "mask"})
+	public String board;
+
+	@Param({"puzzles17", "lowclue"})
+	public String set;
+
+	private Options opt;
+	private int[][] grids;
+	/**
+	 * Istanze inizializzate, da copiare.
+	 */
+	private SudokuBoard[] ready;
+	/**
+	 * Istanze inizializzate con il registro delle modifiche attivo.
+	 */
+	private SudokuBoard[] trailed;
+	/**
+	 * Blocco e valore assegnati su ogni istanza.
+	 */
+	private int[] cell, val;
+	private int next;
+
+	@Setup
+	public void setup(){
+		opt = PuzzleSets.options("--board="+board);
+		grids = PuzzleSets.load(set);
+		ready = new SudokuBoard[grids.length];
+		trailed = new SudokuBoard[grids.length];
+		cell = new int[grids.length];
+		val = new int[grids.length];
+		for(int i = 0; i<grids.length; i++){
+			ready[i] = PuzzleSets.prepare(opt, grids[i]);
+			trailed[i] = ready[i].clona();
+			trailed[i].checkpoint();
+			cell[i] = ready[i].getFirstEmptyCell();
+			val[i] = Integer.numberOfTrailingZeros(ready[i].getLegalMask(cell[i]))+1;
+		}
+	}
+
+	private int next(){
+		if(++next == grids.length) next = 0;
+		return next;
+	}
+
+	@Benchmark
+	public SudokuBoard newBoard(){
+		return opt.newBoard(grids[next()]);
+	}
+
+	@Benchmark
+	public SudokuBoard findLegalValue(){
+		SudokuBoard s = opt.newBoard(grids[next()]);
+		s.findLegalValue();
+		return s;
+	}
+
+	@Benchmark
+	public SudokuBoard clona(){
+		return ready[next()].clona();
+	}
+
+	@Benchmark
+	public SudokuBoard cloneAndSetVal(){
+		int i = next();
+		SudokuBoard s = ready[i].clona();
+		s.setVal(cell[i], val[i]);
+		return s;
+	}
+
+	@Benchmark
+	public int setValAndRollback(){
+		int i = next();
+		SudokuBoard s = trailed[i];
+		int checkpoint = s.checkpoint();
+		s.setVal(cell[i], val[i]);
+		int empty = s.getEmptyCount();
+		s.rollback(checkpoint);
+		return empty;
+	}
+}
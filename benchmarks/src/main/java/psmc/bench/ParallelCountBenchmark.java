@@ -0,0 +1,81 @@
+package psmc.bench;
+
+import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import psmc.MainClassParallel;
+import psmc.Options;
+import psmc.Scheduler;
+import psmc.dlx.DlxSolver;
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Conteggio completo delle soluzioni di tutti i sudoku di un insieme con il solutore parallelo,
+ * nel pool dedicato di uno {@link Scheduler}, con il parallelismo e la modalita' dati. Il parametro <code>options</code>
+ * funziona come in {@link SequentialCountBenchmark}.
+ *
+ * @author  Mattia Paolacci
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelCountBenchmark {
+
+	@Param({"puzzles17", "lowclue"})
+	public String set;
+
+	@Param({"--board=object --strategy=mrv", "--board=mask --strategy=mrv", "--backend=dlx"})
+	public String options;
+
+	@Param({"1", "2", "4", "8"})
+	public int parallelism;
+
+	@Param({"false", "true"})
+	public boolean async;
+
+	private Options opt;
+	private int[][] grids;
+	private Scheduler scheduler;
+	private ForkJoinPool pool;
+
+	@Setup
+	public void setup(){
+		opt = PuzzleSets.options(options);
+		grids = PuzzleSets.load(set);
+		scheduler = Scheduler.dedicated(parallelism, async);
+		pool = scheduler.getPool();
+	}
+
+	@TearDown
+	public void tearDown(){
+		scheduler.close();
+	}
+
+	@Benchmark
+	public BigInteger count(){
+		BigInteger total = BigInteger.ZERO;
+		for(int[] grid : grids){
+			SudokuBoard s = PuzzleSets.prepare(opt, grid);
+			total = total.add(opt.isDlx() ? DlxSolver.count(s, opt.solverConfig(), pool, opt.getInt("dlx-split", 2))
+					: MainClassParallel.sudokuSolve(s, opt.solverConfig(), pool));
+		}
+		return total;
+	}
+}
@@ -0,0 +1,110 @@
+package psmc.bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import psmc.io.PuzzleReader;
+import psmc.sudokupart.Grids;
+
+/**
+ * Lettura dei sudoku: una riga da 81 caratteri, il formato a 9 righe, e un file di
+ * {@link #PUZZLES} sudoku letto con {@link PuzzleReader} o riga per riga.
+ *
+ * @author  Mattia Paolacci
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+	/**
+	 * Sudoku nel file letto dai benchmark su file.
+	 */
+	static final int PUZZLES = 10000;
+
+	private String[] lines;
+	private String[] rows;
+	private Path file;
+	private final int[] grid = new int[PuzzleReader.MAX_CELLS];
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		int[][] grids = PuzzleSets.load("puzzles17");
+		lines = new String[grids.length];
+		rows = new String[grids.length];
+		for(int i = 0; i<grids.length; i++){
+			lines[i] = Grids.toLine(grids[i]);
+			StringBuilder sb = new StringBuilder(90);
+			for(int r = 0; r<9; r++) sb.append(lines[i], r*9, r*9+9).append('\n');
+			rows[i] = sb.toString();
+		}
+		file = Files.createTempFile("psmc-bench", ".txt");
+		StringBuilder sb = new StringBuilder(PUZZLES*82);
+		for(int i = 0; i<PUZZLES; i++) sb.append(lines[i % lines.length]).append('\n');
+		Files.write(file, sb.toString().getBytes(StandardCharsets.US_ASCII));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	private int next(){
+		if(++next == lines.length) next = 0;
+		return next;
+	}
+
+	@Benchmark
+	public int[] parseLine(){
+		return Grids.parseLine(lines[next()]);
+	}
+
+	@Benchmark
+	public int[] readRows() throws IOException {
+		return Grids.readRows(new StringReader(rows[next()]));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PUZZLES)
+	public long fileMapped() throws IOException {
+		long sum = 0;
+		try(PuzzleReader r = new PuzzleReader(file)){
+			while(r.next(grid) > 0) sum += grid[80];
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PUZZLES)
+	public long fileLines() throws IOException {
+		long sum = 0;
+		try(BufferedReader b = Files.newBufferedReader(file, StandardCharsets.US_ASCII)){
+			String line;
+			while((line = b.readLine()) != null) sum += Grids.parseLine(line)[80];
+		}
+		return sum;
+	}
+}
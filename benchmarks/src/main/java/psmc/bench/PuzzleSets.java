@@ -0,0 +1,69 @@
+package psmc.bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import psmc.Options;
+import psmc.sudokupart.Grids;
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Insiemi fissi di sudoku usati dai benchmark, letti dalle risorse del modulo:
+ * <ul>
+ * <li><code>puzzles17</code> sudoku da 17 indizi con soluzione unica;</li>
+ * <li><code>lowclue</code> sudoku da 16 indizi con piu' soluzioni;</li>
+ * <li><code>grid16</code> sudoku 16x16 con soluzione unica;</li>
+ * <li><code>grid25</code> sudoku 25x25 con soluzione unica.</li>
+ * </ul>
+ *
+ * @author  Mattia Paolacci
+ */
+final class PuzzleSets {
+
+	private PuzzleSets(){}
+
+	/**
+	 * @param name nome dell'insieme.
+	 * @return I valori dei blocchi di ogni sudoku dell'insieme.
+	 */
+	static int[][] load(String name){
+		InputStream in = PuzzleSets.class.getResourceAsStream(name+".txt");
+		if(in == null) throw new IllegalArgumentException("insieme di sudoku sconosciuto '"+name+"'");
+		List<int[]> grids = new ArrayList<int[]>();
+		try(BufferedReader b = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII))){
+			String line;
+			while((line = b.readLine()) != null){
+				line = line.trim();
+				if(line.isEmpty() || line.charAt(0) == '#') continue;
+				grids.add(Grids.parseLine(line));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return grids.toArray(new int[0][]);
+	}
+
+	/**
+	 * @param args opzioni separate da spazi, come da riga di comando.
+	 * @return Le opzioni lette.
+	 */
+	static Options options(String args){
+		return Options.parse(args.isEmpty() ? new String[0] : args.trim().split("\\s+"));
+	}
+
+	/**
+	 * Crea l'istanza e la inizializza come fanno le classi main prima della ricerca.
+	 */
+	static SudokuBoard prepare(Options opt, int[] grid){
+		SudokuBoard s = opt.newBoard(grid);
+		s.findLegalValue();
+		s.findBlockWithOneLegalValue();
+		return s;
+	}
+}
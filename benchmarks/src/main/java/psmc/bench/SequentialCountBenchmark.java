@@ -0,0 +1,63 @@
+package psmc.bench;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import psmc.MainClassSequential;
+import psmc.Options;
+import psmc.dlx.DancingLinks;
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Conteggio completo delle soluzioni di tutti i sudoku di un insieme con il solutore sequenziale.
+ * Il parametro <code>options</code> accetta le opzioni da riga di comando di {@link Options},
+ * ad esempio <code>-p options="--board=mask --search=trail"</code>.
+ *
+ * @author  Mattia Paolacci
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SequentialCountBenchmark {
+
+	@Param({"puzzles17", "lowclue"})
+	public String set;
+
+	@Param({"--board=object --strategy=mrv", "--board=mask --strategy=mrv", "--backend=dlx"})
+	public String options;
+
+	private Options opt;
+	private int[][] grids;
+
+	@Setup
+	public void setup(){
+		opt = PuzzleSets.options(options);
+		grids = PuzzleSets.load(set);
+	}
+
+	@Benchmark
+	public BigInteger count(){
+		BigInteger total = BigInteger.ZERO;
+		for(int[] grid : grids){
+			SudokuBoard s = PuzzleSets.prepare(opt, grid);
+			total = total.add(opt.isDlx() ? DancingLinks.count(s, opt.solverConfig())
+					: MainClassSequential.recursiveResolutor(s, opt.solverConfig()));
+		}
+		return total;
+	}
+}
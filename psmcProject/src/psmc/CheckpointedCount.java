@@ -0,0 +1,260 @@
+package psmc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import psmc.distributed.Frontier;
+import psmc.sudokupart.Grids;
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Conteggio parallelo che salva periodicamente il suo stato, cosi' da poter riprendere dopo
+ * un'interruzione senza perdere il lavoro gia' fatto.
+ * <p>
+ * L'albero di ricerca viene espanso fino ad una frontiera con {@link Frontier}; ogni nodo della
+ * frontiera diventa un sotto-problema contato da un {@link SudokuSolver}, e tutti i sotto-problemi
+ * girano insieme nel pool. Un sotto-problema terminato aggiunge le sue soluzioni al totale e viene
+ * segnato come fatto. Il checkpoint contiene il sudoku, il totale dei sotto-problemi terminati (piu'
+ * le soluzioni sopra la frontiera) e i sotto-problemi non ancora terminati; alla ripresa vengono
+ * contati solo questi, quindi si perde al piu' il lavoro dei sotto-problemi in corso.
+ * <p>
+ * Il checkpoint e' scritto da un thread separato: i worker vengono fermati solo per copiare
+ * l'insieme dei sotto-problemi fatti e il totale. Il file e' compresso con gzip, scritto accanto a
+ * quello definitivo, forzato su disco e poi rinominato in modo atomico: un'interruzione durante la
+ * scrittura lascia intatto il checkpoint precedente.
+ *
+ * @author  Mattia Paolacci
+ */
+public class CheckpointedCount {
+
+	/**
+	 * Intestazione del file di checkpoint, con il numero di versione del formato.
+	 */
+	private static final String MAGIC = "psmc-checkpoint-1";
+
+	private final Path file;
+	private final Options opt;
+	private final SolverConfig cfg;
+
+	/**
+	 * Sudoku nel formato a una riga, per controllare che la ripresa riguardi lo stesso sudoku.
+	 */
+	private String puzzle;
+
+	/**
+	 * Sotto-problemi da contare in questa esecuzione: i valori dei blocchi, un byte per blocco.
+	 */
+	private final List<byte[]> problems = new ArrayList<byte[]>();
+
+	/**
+	 * Sotto-problemi terminati e totale delle loro soluzioni, piu' quelle sopra la frontiera e quelle
+	 * delle esecuzioni precedenti. Protetti dal lock di this.
+	 */
+	private final BitSet done = new BitSet();
+	private BigInteger total = BigInteger.ZERO;
+
+	/**
+	 * Impedisce che due checkpoint vengano scritti insieme, senza bloccare i sotto-problemi.
+	 */
+	private final Object saveLock = new Object();
+
+	/**
+	 * @param file file del checkpoint; se esiste, il conteggio riprende da quello.
+	 * @param opt opzioni con cui creare le istanze dei sotto-problemi.
+	 * @param cfg parametri della ricerca.
+	 */
+	public CheckpointedCount(Path file, Options opt, SolverConfig cfg){
+		this.file = file;
+		this.opt = opt;
+		this.cfg = cfg;
+	}
+
+	/**
+	 * Conta le soluzioni di s, riprendendo dal checkpoint se presente. A conteggio terminato il
+	 * checkpoint viene cancellato.
+	 *
+	 * @param s istanza inizializzata con {@link SudokuBoard#findLegalValue()}.
+	 * @param pool pool in cui eseguire la ricerca.
+	 * @param frontier profondita' della frontiera, usata solo se non c'e' un checkpoint.
+	 * @param intervalMillis intervallo tra due checkpoint.
+	 * @return Il numero esatto di soluzioni legali.
+	 * @throws IOException se il checkpoint non puo' essere letto o scritto.
+	 */
+	public BigInteger count(SudokuBoard s, ForkJoinPool pool, int frontier, long intervalMillis) throws IOException {
+		puzzle = Grids.toLine(s);
+		if(Files.exists(file)) load();
+		else {
+			Frontier f = new Frontier(cfg, frontier);
+			f.expand(s, grid -> problems.add(toBytes(Grids.parseLine(grid))));
+			total = f.getSolutions().value();
+			cfg.addNodes(f.getNodes());
+			save();
+		}
+
+		ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "psmc-checkpoint");
+			t.setDaemon(true);
+			return t;
+		});
+		writer.scheduleWithFixedDelay(this::trySave, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		// con SIGINT o SIGTERM scrive un ultimo checkpoint prima di uscire.
+		Thread hook = new Thread(this::trySave, "psmc-checkpoint-exit");
+		Runtime.getRuntime().addShutdownHook(hook);
+		try {
+			List<Problem> tasks = new ArrayList<Problem>(problems.size());
+			for(int i = 0; i<problems.size(); i++) tasks.add(new Problem(i));
+			pool.invoke(new RecursiveAction(){
+				@Override
+				protected void compute(){ invokeAll(tasks); }
+			});
+		} finally {
+			try {
+				Runtime.getRuntime().removeShutdownHook(hook);
+			} catch (IllegalStateException e) {
+				// la JVM sta gia' terminando: il checkpoint lo scrive l'hook.
+			}
+			writer.shutdownNow();
+			try {
+				writer.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if(cfg.isCancelled()){
+			// ricerca interrotta: il checkpoint resta per riprenderla.
+			save();
+			return total();
+		}
+		Files.deleteIfExists(file);
+		return total();
+	}
+
+	/**
+	 * @return Il numero di sotto-problemi di questa esecuzione.
+	 */
+	public int getProblems(){ return problems.size(); }
+
+	private synchronized BigInteger total(){ return total; }
+
+	/**
+	 * Conta un sotto-problema e ne aggiunge le soluzioni al totale.
+	 */
+	private final class Problem extends RecursiveAction {
+
+		private final int index;
+
+		Problem(int index){ this.index = index; }
+
+		@Override
+		protected void compute(){
+			if(cfg.isCancelled()) return;
+			byte[] cells = problems.get(index);
+			int[] grid = new int[cells.length];
+			for(int i = 0; i<grid.length; i++) grid[i] = cells[i];
+			SudokuBoard s = opt.newBoard(grid);
+			s.findLegalValue();
+			s.findBlockWithOneLegalValue();
+			SolutionCounter counter = new SolutionCounter();
+			if(!s.hasContradiction() && cfg.getPropagator().propagate(s))
+				new SudokuSolver(s, cfg, counter).compute();
+			// un sotto-problema interrotto non e' terminato: alla ripresa va contato di nuovo.
+			if(cfg.isCancelled()) return;
+			BigInteger n = counter.sum();
+			synchronized(CheckpointedCount.this){
+				total = total.add(n);
+				done.set(index);
+			}
+		}
+	}
+
+	private static byte[] toBytes(int[] grid){
+		byte[] b = new byte[grid.length];
+		for(int i = 0; i<b.length; i++) b[i] = (byte) grid[i];
+		return b;
+	}
+
+	/**
+	 * Scrive il checkpoint: i sotto-problemi non terminati e il totale.
+	 */
+	private void save() throws IOException {
+		synchronized(saveLock){
+			BitSet doneCopy;
+			BigInteger totalCopy;
+			synchronized(this){
+				doneCopy = (BitSet) done.clone();
+				totalCopy = total;
+			}
+			write(doneCopy, totalCopy);
+		}
+	}
+
+	private void write(BitSet doneCopy, BigInteger totalCopy) throws IOException {
+		Path tmp = file.resolveSibling(file.getFileName()+".tmp");
+		try(FileOutputStream fos = new FileOutputStream(tmp.toFile())){
+			GZIPOutputStream gz = new GZIPOutputStream(fos, 1 << 16);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gz));
+			out.writeUTF(MAGIC);
+			out.writeUTF(puzzle);
+			byte[] t = totalCopy.toByteArray();
+			out.writeInt(t.length);
+			out.write(t);
+			out.writeInt(problems.size() - doneCopy.cardinality());
+			for(int i = 0; i<problems.size(); i++){
+				if(!doneCopy.get(i)) out.write(problems.get(i));
+			}
+			out.flush();
+			gz.finish();
+			// il contenuto deve essere su disco prima che il nome lo renda il checkpoint valido.
+			fos.getChannel().force(true);
+		}
+		Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Scrive il checkpoint, segnalando gli errori senza interrompere la ricerca.
+	 */
+	private void trySave(){
+		try {
+			save();
+		} catch (IOException e) {
+			System.err.println("Checkpoint non riuscito: "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Legge il checkpoint: i sotto-problemi diventano quelli da contare, il totale il punto di partenza.
+	 */
+	private void load() throws IOException {
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file), 1 << 16)))){
+			if(!in.readUTF().equals(MAGIC)) throw new IOException(file+": non e' un checkpoint");
+			if(!in.readUTF().equals(puzzle)) throw new IOException(file+": il checkpoint e' di un altro sudoku");
+			byte[] t = new byte[in.readInt()];
+			in.readFully(t);
+			total = new BigInteger(t);
+			int n = in.readInt();
+			for(int i = 0; i<n; i++){
+				byte[] cells = new byte[puzzle.length()];
+				in.readFully(cells);
+				problems.add(cells);
+			}
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package psmc;
+
+import java.math.BigInteger;
+
+/**
+ * Risultato di un conteggio che puo' essere stato interrotto al raggiungimento del limite
+ * dato con {@link SolverConfig#setLimit(long)}: il numero di soluzioni trovate, e se e' il
+ * numero esatto o solo un limite inferiore.
+ *
+ * @author  Mattia Paolacci
+ */
+public final class CountResult {
+
+	private final BigInteger count;
+	private final boolean exact;
+
+	public CountResult(BigInteger count, boolean exact){
+		this.count = count;
+		this.exact = exact;
+	}
+
+	/**
+	 * @return Le soluzioni trovate: tutte se {@link #isExact()}, altrimenti almeno il limite.
+	 */
+	public BigInteger getCount(){ return count; }
+
+	/**
+	 * @return true se la ricerca e' arrivata in fondo e il conteggio e' esatto.
+	 */
+	public boolean isExact(){ return exact; }
+
+	/**
+	 * @return "nessuna", "unica" o "multipla", secondo il numero di soluzioni.
+	 */
+	public String uniqueness(){
+		if(count.signum() == 0) return "nessuna";
+		if(count.equals(BigInteger.ONE) && exact) return "unica";
+		return "multipla";
+	}
+
+	/**
+	 * @return Il conteggio, preceduto da "almeno " se non e' esatto.
+	 */
+	@Override
+	public String toString(){ return exact ? count.toString() : "almeno "+count; }
+}
@@ -0,0 +1,63 @@
+package psmc;
+
+import java.util.concurrent.ForkJoinTask;
+
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Politica di granularita' di {@link SudokuSolver}: decide quando smettere di creare nuovi task
+ * e risolvere il sotto-albero con l'algoritmo sequenziale. Vicino alle foglie il costo di un task
+ * supera il lavoro che contiene.
+ * <p>
+ * Si passa al sequenziale appena una delle soglie attive e' raggiunta:
+ * <ul>
+ * <li>blocchi vuoti rimasti minori o uguali a <code>emptyThreshold</code>;</li>
+ * <li>profondita' nell'albero di ricerca maggiore o uguale a <code>depthThreshold</code>;</li>
+ * <li>task in coda nel thread corrente oltre quelli che gli altri thread possono rubare,
+ * {@link ForkJoinTask#getSurplusQueuedTaskCount()}, maggiori di <code>surplusThreshold</code>.</li>
+ * </ul>
+ * Una soglia negativa e' disattivata. Con tutte le soglie disattivate si crea un task per ogni figlio.
+ *
+ * @author  Mattia Paolacci
+ */
+public class GranularityPolicy {
+
+	/**
+	 * Politica che non passa mai al sequenziale.
+	 */
+	public static final GranularityPolicy ALWAYS_FORK = new GranularityPolicy(-1, -1, -1);
+
+	private final int emptyThreshold;
+	private final int depthThreshold;
+	private final int surplusThreshold;
+
+	/**
+	 * @param emptyThreshold soglia sui blocchi vuoti rimasti, negativa se disattivata.
+	 * @param depthThreshold soglia sulla profondita', negativa se disattivata.
+	 * @param surplusThreshold soglia sui task in eccesso nella coda, negativa se disattivata.
+	 */
+	public GranularityPolicy(int emptyThreshold, int depthThreshold, int surplusThreshold){
+		this.emptyThreshold = emptyThreshold;
+		this.depthThreshold = depthThreshold;
+		this.surplusThreshold = surplusThreshold;
+	}
+
+	/**
+	 * Va chiamata da un thread di un {@link java.util.concurrent.ForkJoinPool}.
+	 *
+	 * @param s istanza del nodo corrente.
+	 * @param depth profondita' del nodo, 0 per la radice.
+	 * @return true se il sotto-albero va risolto sequenzialmente.
+	 */
+	public boolean isSequential(SudokuBoard s, int depth){
+		if(emptyThreshold >= 0 && s.getEmptyCount() <= emptyThreshold) return true;
+		if(depthThreshold >= 0 && depth >= depthThreshold) return true;
+		if(surplusThreshold >= 0 && ForkJoinTask.getSurplusQueuedTaskCount() > surplusThreshold) return true;
+		return false;
+	}
+
+	@Override
+	public String toString(){
+		return "empty<="+emptyThreshold+", depth>="+depthThreshold+", surplus>"+surplusThreshold;
+	}
+}
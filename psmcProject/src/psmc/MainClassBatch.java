@@ -0,0 +1,330 @@
+package psmc;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import psmc.dlx.DancingLinks;
+import psmc.io.BinaryFormat;
+import psmc.io.BinaryPuzzleReader;
+import psmc.io.MalformedPuzzleException;
+import psmc.io.PuzzleReader;
+import psmc.io.PuzzleSource;
+import psmc.io.ResultCache;
+import psmc.sudokupart.Canonical;
+import psmc.sudokupart.Grids;
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Classe da chiamare per risolvere una raccolta di sudoku, nel formato a una riga con "." o "0"
+ * per i blocchi vuoti o in quello a N righe, anche 16x16 e 25x25. Un file viene letto mappandolo in memoria con
+ * {@link PuzzleReader}, o con {@link BinaryPuzzleReader} se e' nel formato di {@link BinaryFormat};
+ * lo standard input ("-") solo nel formato a una riga.
+ * Uso: <code>java psmc.MainClassBatch [opzioni] input|-</code>, vedi {@link Options}.
+ * <p>
+ * Lettura, risoluzione e scrittura sono collegate da code limitate: un thread legge i sudoku, ogni
+ * sudoku diventa un task del {@link ForkJoinPool} scelto con <code>--pool</code> (che a sua volta divide la ricerca con {@link SudokuSolver}),
+ * e un thread scrive una riga per sudoku: indice, sudoku, numero di soluzioni e tempo in ms.
+ * Al piu' <code>--queue</code> sudoku sono in memoria tra lettura e scrittura.
+ * <p>
+ * Opzioni proprie:
+ * <ul>
+ * <li><code>--output=file</code> file dei risultati, di default lo standard output.</li>
+ * <li><code>--order=input|completion</code> ordine dei risultati: quello dell'input (default) o
+ * quello in cui vengono risolti.</li>
+ * <li><code>--queue=N</code> capacita' delle code, di default 1024.</li>
+ * <li><code>--result-cache=file</code> cerca ogni sudoku, nella sua forma canonica, in una {@link ResultCache}
+ * e vi memorizza i conteggi esatti, cosi' che sudoku ripetuti o equivalenti, anche di esecuzioni diverse,
+ * non vengano contati di nuovo. <code>--result-cache-size=MB</code> e' la dimensione del file quando viene
+ * creato, di default 16 MB.</li>
+ * </ul>
+ *
+ * @author  Mattia Paolacci
+ */
+public class MainClassBatch {
+
+	/**
+	 * Sudoku letto dall'input: i valori dei blocchi, oppure il motivo per cui non e' valido.
+	 */
+	private static final class Job {
+		final long index;
+		final int[] grid;
+		final String error;
+		Job(long index, int[] grid, String error){ this.index = index; this.grid = grid; this.error = error; }
+	}
+
+	/**
+	 * Riga di risultato di un sudoku.
+	 */
+	private static final class Result {
+		final long index;
+		final String text;
+		Result(long index, String text){ this.index = index; this.text = text; }
+	}
+
+	private static final Job END = new Job(-1, null, null);
+	private static final Result END_RESULT = new Result(-1, null);
+
+	public static void main(String args[]) throws IOException, InterruptedException
+	{
+		Options opt = Options.parse(args);
+		// raccoglie solo i nodi: i contatori di --jmx li aggiornano gia' i parametri di ogni sudoku.
+		SolverConfig cfg = opt.solverConfig().setMetrics(null);
+		int capacity = opt.getInt("queue", 1024);
+		String order = opt.get("order", "input");
+		if(!order.equals("input") && !order.equals("completion"))
+			throw new IllegalArgumentException("--order: valore sconosciuto '"+order+"'");
+		boolean inputOrder = order.equals("input");
+
+		String in = opt.getArgument(0);
+		OutputStream output = opt.has("output") ? new FileOutputStream(opt.get("output", null)) : System.out;
+
+		BlockingQueue<Job> jobs = new ArrayBlockingQueue<Job>(capacity);
+		// la coda dei risultati non si riempie mai: i sudoku in lavorazione sono al piu' capacity.
+		BlockingQueue<Result> results = new ArrayBlockingQueue<Result>(capacity+1);
+		Semaphore inFlight = new Semaphore(capacity);
+		ResultCache known = opt.has("result-cache")
+				? new ResultCache(Paths.get(opt.get("result-cache", null)), opt.getInt("result-cache-size", 16) * (1L << 20))
+				: null;
+
+		Thread reader = new Thread(() -> {
+			if(in.equals("-")) readLines(jobs);
+			else readMapped(in, jobs);
+		}, "batch-reader");
+		Writer w = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 1 << 16);
+		AtomicReference<IOException> writeError = new AtomicReference<IOException>();
+		Thread writer = new Thread(() -> write(w, results, inFlight, inputOrder, writeError), "batch-writer");
+		reader.start();
+		writer.start();
+
+		long start = System.nanoTime();
+		long n = 0;
+		Scheduler.Stats stats;
+		try(Scheduler scheduler = opt.scheduler()){
+			ForkJoinPool pool = scheduler.getPool();
+			while(true){
+				Job job = jobs.take();
+				if(job == END) break;
+				inFlight.acquire();
+				pool.execute(new PuzzleTask(job, opt, cfg, known, results));
+				n++;
+			}
+			// tutti i permessi tornano quando l'ultimo risultato e' stato scritto.
+			inFlight.acquire(capacity);
+			stats = scheduler.stats();
+		}
+		results.put(END_RESULT);
+		writer.join();
+		long time = (System.nanoTime() - start) / 1000000;
+
+		System.err.println("Sudoku risolti: "+n);
+		System.err.println("Nodi visitati: "+cfg.getNodes());
+		if(opt.metrics() != null) System.err.println("Metriche: "+opt.metrics());
+		if(opt.cache() != null) System.err.println("Cache: "+opt.cache());
+		if(known != null){
+			System.err.println("Cache dei risultati: "+known);
+			known.close();
+		}
+		System.err.println("Pool: "+stats);
+		System.err.println("Thread attivi "+stats.activeTimeline(MainClassParallel.TIMELINE_POINTS));
+		System.err.println("Tempo: "+time+" ms");
+		System.err.println("Sudoku al secondo: "+(time == 0 ? n : n*1000/time));
+		if(writeError.get() != null){
+			System.err.println("Errore di scrittura: "+writeError.get().getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Legge i sudoku dal file, di testo o binario, e li mette nella coda. Un sudoku malformato
+	 * diventa un risultato di errore con la sua posizione in byte, e la lettura prosegue.
+	 */
+	private static void readMapped(String file, BlockingQueue<Job> jobs){
+		long index = 0;
+		try(PuzzleSource r = PuzzleSource.open(Paths.get(file))){
+			while(true){
+				int[] grid = new int[PuzzleReader.MAX_CELLS];
+				try {
+					int cells = r.next(grid);
+					if(cells == 0) break;
+					jobs.put(new Job(index++, Arrays.copyOf(grid, cells), null));
+				} catch (MalformedPuzzleException e) {
+					jobs.put(new Job(index++, null, e.getMessage()));
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Errore di lettura: "+e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			try {
+				jobs.put(END);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Legge le righe dello standard input e le mette nella coda, saltando righe vuote e commenti (#).
+	 * Di ogni riga si considera solo la prima parola.
+	 */
+	private static void readLines(BlockingQueue<Job> jobs){
+		long index = 0;
+		try(BufferedReader b = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16)){
+			String line;
+			while((line = b.readLine()) != null){
+				line = line.trim();
+				if(line.isEmpty() || line.charAt(0) == '#') continue;
+				int sp = 0;
+				while(sp < line.length() && !Character.isWhitespace(line.charAt(sp))) sp++;
+				try {
+					jobs.put(new Job(index++, Grids.parseLine(line.subSequence(0, sp)), null));
+				} catch (IllegalArgumentException e) {
+					jobs.put(new Job(index-1, null, e.getMessage()));
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Errore di lettura: "+e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			try {
+				jobs.put(END);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Scrive i risultati, nell'ordine di input o di completamento, restituendo un permesso
+	 * per ogni risultato scritto. Dopo un errore di scrittura continua a prendere i risultati, scartandoli,
+	 * cosi' che la lettura e il pool terminino normalmente; l'errore resta in error.
+	 */
+	private static void write(Writer w, BlockingQueue<Result> results, Semaphore inFlight, boolean inputOrder,
+			AtomicReference<IOException> error){
+		Map<Long, Result> pending = new HashMap<Long, Result>();
+		long next = 0;
+		try {
+			while(true){
+				Result r = results.take();
+				if(r == END_RESULT) break;
+				if(!inputOrder){
+					emit(w, r.text, error);
+					inFlight.release();
+					continue;
+				}
+				pending.put(r.index, r);
+				while((r = pending.remove(next)) != null){
+					emit(w, r.text, error);
+					inFlight.release();
+					next++;
+				}
+			}
+			if(error.get() == null) w.flush();
+		} catch (IOException e) {
+			error.compareAndSet(null, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Scrive una riga di risultato, se non c'e' gia' stato un errore di scrittura.
+	 */
+	private static void emit(Writer w, String text, AtomicReference<IOException> error){
+		if(error.get() != null) return;
+		try {
+			w.write(text);
+		} catch (IOException e) {
+			error.set(e);
+		}
+	}
+
+	/**
+	 * Risolve un sudoku all'interno del pool e mette il risultato nella coda.
+	 */
+	private static final class PuzzleTask extends RecursiveAction {
+
+		private final Job job;
+		private final Options opt;
+		/**
+		 * Parametri comuni, che raccolgono i nodi visitati da tutti i sudoku.
+		 */
+		private final SolverConfig cfg;
+		/**
+		 * Cache dei risultati, null se non usata.
+		 */
+		private final ResultCache known;
+		private final BlockingQueue<Result> results;
+
+		PuzzleTask(Job job, Options opt, SolverConfig cfg, ResultCache known, BlockingQueue<Result> results){
+			this.job = job;
+			this.opt = opt;
+			this.cfg = cfg;
+			this.known = known;
+			this.results = results;
+		}
+
+		@Override
+		protected void compute(){
+			if(job.error != null){
+				results.add(new Result(job.index, job.index+"\t-\tERRORE: "+job.error+"\n"));
+				return;
+			}
+			long start = System.nanoTime();
+			String puzzle = Grids.toLine(job.grid);
+			String text;
+			try {
+				int[] canonical = known == null ? null : Canonical.of(job.grid);
+				BigInteger cached = known == null ? null : known.get(canonical);
+				if(cached != null){
+					long time = (System.nanoTime() - start) / 1000000;
+					results.add(new Result(job.index, job.index+"\t"+puzzle+"\t"+new CountResult(cached, true)+"\t"+time+"\n"));
+					return;
+				}
+				// limite e cancellazione valgono per il singolo sudoku: ognuno ha i suoi parametri.
+				SolverConfig local = opt.solverConfig();
+				SudokuBoard s = opt.newBoard(job.grid);
+				s.findLegalValue();
+				s.findBlockWithOneLegalValue();
+				BigInteger count = BigInteger.ZERO;
+				// con la copertura esatta il parallelismo e' solo tra sudoku diversi.
+				if(opt.isDlx()) count = DancingLinks.count(s, local);
+				else if(local.getPropagator().propagate(s)){
+					BigInteger factor = local.symmetryFactor(s);
+					SolutionCounter counter = new SolutionCounter();
+					new SudokuSolver(s, local, counter).invoke();
+					count = counter.sum().multiply(factor);
+				}
+				cfg.addNodes(local.getNodes());
+				// un conteggio fermato dal limite non e' esatto e non va memorizzato.
+				if(known != null && !local.isLimitReached()) known.put(canonical, count);
+				long time = (System.nanoTime() - start) / 1000000;
+				text = job.index+"\t"+puzzle+"\t"+local.result(count)+"\t"+time+"\n";
+			} catch (RuntimeException e) {
+				// il risultato va comunque scritto, o il suo permesso andrebbe perso.
+				text = job.index+"\t"+puzzle+"\tERRORE: "+e.getMessage()+"\n";
+			}
+			results.add(new Result(job.index, text));
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package psmc;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import psmc.io.BinaryFormat;
+import psmc.io.BinaryPuzzleReader;
+import psmc.io.BinaryPuzzleWriter;
+import psmc.io.MalformedPuzzleException;
+import psmc.io.PuzzleReader;
+import psmc.sudokupart.Geometry;
+import psmc.sudokupart.Grids;
+
+/**
+ * Classe da chiamare per convertire una raccolta di sudoku tra il formato di testo e quello binario
+ * di {@link BinaryFormat}.
+ * Uso: <code>java psmc.MainClassConvert [--solutions] input output</code>.
+ * <p>
+ * Un file di testo, in uno dei formati di {@link PuzzleReader}, viene convertito nel formato binario;
+ * un file binario nel formato a una riga. Con <code>--solutions</code> i sudoku devono essere soluzioni
+ * complete, come quelle scritte con l'opzione <code>--solutions</code> dei solutori, e vengono scritti
+ * nel record piu' compatto delle soluzioni. Tutti i sudoku devono avere la stessa dimensione; quelli
+ * malformati vengono saltati con un avviso.
+ *
+ * @author  Mattia Paolacci
+ */
+public class MainClassConvert {
+
+	public static void main(String args[]) throws IOException
+	{
+		Options opt = Options.parse(args);
+		Path in = Paths.get(opt.getArgument(0)), out = Paths.get(opt.getArgument(1));
+		long start = System.nanoTime();
+		long n, skipped = 0;
+		if(BinaryPuzzleReader.isBinary(in)){
+			n = toText(in, out);
+		}
+		else {
+			long[] counts = toBinary(in, out, opt.has("solutions"));
+			n = counts[0];
+			skipped = counts[1];
+		}
+		long time = (System.nanoTime() - start) / 1000000;
+		System.out.println("Sudoku convertiti: "+n);
+		if(skipped > 0) System.out.println("Sudoku saltati: "+skipped);
+		System.out.println("Byte: "+Files.size(in)+" -> "+Files.size(out));
+		System.out.println("Tempo: "+time+" ms");
+	}
+
+	/**
+	 * @return Il numero di sudoku convertiti e quello dei sudoku saltati.
+	 */
+	private static long[] toBinary(Path in, Path out, boolean solutions) throws IOException {
+		int[] grid = new int[PuzzleReader.MAX_CELLS];
+		long skipped = 0;
+		BinaryPuzzleWriter w = null;
+		try(PuzzleReader r = new PuzzleReader(in)){
+			while(true){
+				int cells;
+				try {
+					cells = r.next(grid);
+				} catch (MalformedPuzzleException e) {
+					System.err.println("Avviso: "+e.getMessage());
+					skipped++;
+					continue;
+				}
+				if(cells == 0) break;
+				// la dimensione del file e' quella del primo sudoku.
+				if(w == null) w = new BinaryPuzzleWriter(out, Geometry.forCells(cells), solutions);
+				if(cells != w.getFormat().getGeometry().getCells())
+					throw new IOException("i sudoku del file hanno dimensioni diverse: "+cells+" blocchi invece di "
+							+w.getFormat().getGeometry().getCells());
+				try {
+					w.write(Arrays.copyOf(grid, cells));
+				} catch (IllegalArgumentException e) {
+					System.err.println("Avviso: sudoku "+(w.getCount()+skipped)+": "+e.getMessage());
+					skipped++;
+				}
+			}
+			if(w == null) throw new IOException(in+": nessun sudoku nel file");
+			return new long[]{ w.getCount(), skipped };
+		} finally {
+			if(w != null) w.close();
+		}
+	}
+
+	/**
+	 * @return Il numero di sudoku convertiti.
+	 */
+	private static long toText(Path in, Path out) throws IOException {
+		try(BinaryPuzzleReader r = new BinaryPuzzleReader(in);
+				Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(out.toFile()), StandardCharsets.UTF_8), 1 << 16)){
+			int[] grid = new int[r.getGeometry().getCells()];
+			long n = 0;
+			while(r.next(grid) > 0){
+				w.write(Grids.toLine(grid));
+				w.write('\n');
+				n++;
+			}
+			return n;
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package psmc;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import psmc.generator.PuzzleGenerator;
+import psmc.sudokupart.Geometry;
+import psmc.sudokupart.Grids;
+
+/**
+ * Classe da chiamare per generare sudoku con soluzione unica, vedi {@link PuzzleGenerator}.
+ * Uso: <code>java psmc.MainClassGenerate [opzioni]</code>, vedi {@link Options} per il pool e il motore.
+ * <p>
+ * Ogni thread del pool genera sudoku con il suo {@link PuzzleGenerator} e il suo generatore casuale,
+ * ottenuto con {@link SplittableRandom#split()} da quello del seme: i thread condividono solo il numero
+ * di sudoku ancora da generare e l'output. Ogni sudoku e' una riga, nel formato a una riga seguito dal
+ * numero di indizi; il riepilogo va sullo standard error.
+ * <p>
+ * Opzioni proprie:
+ * <ul>
+ * <li><code>--count=N</code> sudoku da generare, di default 100.</li>
+ * <li><code>--box=B</code> lato della regione, 3 (default), 4 o 5.</li>
+ * <li><code>--clues=N</code> si ferma a N indizi invece di togliere tutti quelli possibili; i tentativi che
+ * non ci arrivano vengono scartati. Senza l'opzione i sudoku sono minimi.</li>
+ * <li><code>--attempts=N</code> tentativi al piu', di default 1000 per sudoku.</li>
+ * <li><code>--seed=S</code> seme dei generatori casuali, di default casuale.</li>
+ * <li><code>--output=file</code> file dei sudoku, di default lo standard output.</li>
+ * </ul>
+ *
+ * @author  Mattia Paolacci
+ */
+public class MainClassGenerate {
+
+	public static void main(String args[]) throws IOException
+	{
+		Options opt = Options.parse(args);
+		int box = opt.getInt("box", 3);
+		if(box < Geometry.MIN_BOX || box > Geometry.MAX_BOX)
+			throw new IllegalArgumentException("--box: deve essere tra "+Geometry.MIN_BOX+" e "+Geometry.MAX_BOX);
+		Geometry g = Geometry.ofBox(box);
+		long count = opt.getInt("count", 100);
+		int target = opt.getInt("clues", 0);
+		if(target < 0 || target > g.getCells()) throw new IllegalArgumentException("--clues: deve essere tra 0 e "+g.getCells());
+		long maxAttempts = opt.has("attempts") ? opt.getInt("attempts", 0) : 1000 * count;
+		long seed = opt.has("seed") ? Long.parseLong(opt.get("seed", null)) : System.nanoTime();
+		boolean dlx = opt.isDlx();
+
+		OutputStream output = opt.has("output") ? new FileOutputStream(opt.get("output", null)) : System.out;
+		Writer w = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 1 << 16);
+		AtomicLong remaining = new AtomicLong(count), attempts = new AtomicLong(maxAttempts);
+		SplittableRandom master = new SplittableRandom(seed);
+		List<PuzzleGenerator> generators = new ArrayList<PuzzleGenerator>();
+		long[] clueStats = { 0, Long.MAX_VALUE, 0 };  // somma, minimo, massimo
+
+		long start = System.nanoTime();
+		Scheduler.Stats stats;
+		try(Scheduler scheduler = opt.scheduler()){
+			ForkJoinPool pool = scheduler.getPool();
+			List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+			for(int t = 0; t<pool.getParallelism(); t++){
+				PuzzleGenerator gen = new PuzzleGenerator(g, master.split(), dlx);
+				generators.add(gen);
+				tasks.add(pool.submit(() -> {
+					while(remaining.get() > 0 && attempts.getAndDecrement() > 0){
+						int[] puzzle = gen.generate(target);
+						// un altro thread puo' aver generato l'ultimo sudoku nel frattempo.
+						if(puzzle == null || remaining.getAndDecrement() <= 0) continue;
+						int clues = 0;
+						for(int v : puzzle) if(v != 0) clues++;
+						synchronized(w){
+							try {
+								w.write(Grids.toLine(puzzle)+"\t"+clues+"\n");
+							} catch (IOException e) {
+								throw new IllegalStateException("Errore di scrittura: "+e.getMessage());
+							}
+							clueStats[0] += clues;
+							clueStats[1] = Math.min(clueStats[1], clues);
+							clueStats[2] = Math.max(clueStats[2], clues);
+						}
+					}
+				}));
+			}
+			for(ForkJoinTask<?> task : tasks) task.join();
+			stats = scheduler.stats();
+		}
+		w.flush();
+		long time = (System.nanoTime() - start) / 1000000;
+
+		long n = count - Math.max(0, remaining.get());
+		long tried = 0, checks = 0;
+		for(PuzzleGenerator gen : generators){
+			tried += gen.getAttempts();
+			checks += gen.getChecks();
+		}
+		System.err.println("Sudoku generati: "+n);
+		System.err.println("Tentativi: "+tried);
+		System.err.println("Verifiche di unicita': "+checks);
+		if(n > 0) System.err.println(String.format("Indizi: media %.1f, min %d, max %d", (double) clueStats[0] / n, clueStats[1], clueStats[2]));
+		System.err.println("Seme: "+seed);
+		System.err.println("Pool: "+stats);
+		System.err.println("Tempo: "+time+" ms");
+		System.err.println("Sudoku al secondo: "+(time == 0 ? n : n*1000/time));
+	}
+}
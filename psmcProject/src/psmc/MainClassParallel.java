@@ -1,23 +1,39 @@
 package psmc;
 
-import java.io.FileReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
 import java.util.concurrent.ForkJoinPool;
 
-import psmc.sudokupart.SudokuInstance;
+import psmc.dlx.DlxSolver;
+import psmc.sudokupart.Grids;
+import psmc.sudokupart.SudokuBoard;
 
 /**
  * Classe da chiamare per l'esecuzione parallela.
+ * Uso: <code>java psmc.MainClassParallel [opzioni] file</code>, vedi {@link Options}.
  *
  * @author  Mattia Paolacci
  */
 public class MainClassParallel {
+
+	/**
+	 * Numero massimo di valori dell'andamento dei thread attivi stampato a fine esecuzione.
+	 */
+	static final int TIMELINE_POINTS = 40;
 	
 	public static void main(String args[]) throws IOException
 	{		
 		
-		FileReader f = new FileReader(args[0]);
-		SudokuInstance s = new SudokuInstance(f);
+		Options opt = Options.parse(args);
+		SudokuBoard s = opt.readBoard();
+		SolverConfig cfg = opt.solverConfig();
 
 		// Inizializza la matrice con i possibili valori legali per ogni blocco.
 		s.findLegalValue();
@@ -30,19 +46,136 @@ public class MainClassParallel {
 		
 		// cerco se ci sono soluzioni immediate. Ossia blocche con un'unica soluzione lagale.
 		s.findBlockWithOneLegalValue();
+		SudokuBoard check = opt.has("verify-symmetry") ? s.clona() : null;
+		SolutionSink sink = opt.solutionSink(s.getGeometry());
+		if(sink != null) cfg.setListener(sink);
 		
 		// Start algoritmo
-		int res = sudokuSolve(s);
+		long start = System.nanoTime();
+		BigInteger res, exact = null;
+		long time;
+		Scheduler.Stats stats;
+		try(Scheduler scheduler = opt.scheduler()){
+			ForkJoinPool pool = scheduler.getPool();
+			if(opt.has("solutions")) res = printSolutions(s, cfg, pool);
+			else if(opt.has("checkpoint")) res = checkpointed(s, cfg, opt, pool);
+			else res = opt.isDlx() ? DlxSolver.count(s, cfg, pool, opt.getInt("dlx-split", 2))
+					: sudokuSolve(s, cfg, pool);
+			// il tempo comprende la scrittura delle ultime soluzioni.
+			if(sink != null) sink.close();
+			stats = scheduler.stats();
+			time = (System.nanoTime() - start) / 1000000;
+			// la verifica usa lo stesso pool, fuori dal tempo misurato.
+			if(check != null) exact = sudokuSolve(check, opt.solverConfig().setDigitSymmetry(false).setMetrics(null), pool);
+		}
 		
 		System.out.println("Dimensione spazio soluzioni: "+spaceSol);
 		System.out.println("Fattore di riempimento: "+perc+"%");
-		System.out.println("Soluzioni Legali: "+ res);
+		System.out.println(opt.isDlx() ? "Motore: dlx" : "Propagazione: "+cfg.getPropagator());
+		System.out.println("Nodi visitati: "+cfg.getNodes());
+		if(cfg.getMetrics() != null) System.out.println("Metriche: "+cfg.getMetrics());
+		if(opt.cache() != null) System.out.println("Cache: "+opt.cache());
+		if(sink != null) System.out.println("Soluzioni scritte: "+sink);
+		System.out.println("Pool: "+stats);
+		System.out.println("Thread attivi "+stats.activeTimeline(TIMELINE_POINTS));
+		System.out.println("Tempo: "+time+" ms");
+		CountResult r = cfg.result(res);
+		System.out.println("Soluzioni Legali: "+ r);
+		if(cfg.getLimit() > 0) System.out.println("Soluzione: "+r.uniqueness());
+		if(exact != null)
+			System.out.println("Verifica simmetria: "+(exact.equals(res) ? "ok" : "ERRORE, senza riduzione "+exact));
 		
 	}
 	
-	public static int sudokuSolve(SudokuInstance s){
+	/**
+	 * Scrive sullo standard output le soluzioni trovate dalla ricerca parallela, una per riga,
+	 * chiedendole al {@link SolutionPublisher} a blocchi.
+	 * 
+	 * @param s Istanza di {@link SudokuBoard}.
+	 * @param cfg parametri della ricerca.
+	 * @param pool pool in cui eseguire la ricerca.
+	 * @return Il numero di soluzioni scritte.
+	 * @throws IOException
+	 */
+	private static BigInteger printSolutions(SudokuBoard s, SolverConfig cfg, ForkJoinPool pool) throws IOException {
+		final int batch = 256;
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+		CompletableFuture<Long> done = new CompletableFuture<Long>();
+		Solutions.publisher(s, cfg, pool, 4*batch).subscribe(new Flow.Subscriber<byte[]>(){
+			private Flow.Subscription sub;
+			private long n;
+			public void onSubscribe(Flow.Subscription sub){
+				this.sub = sub;
+				sub.request(batch);
+			}
+			public void onNext(byte[] grid){
+				try {
+					out.write(Grids.toLine(grid));
+					out.write('\n');
+				} catch (IOException e) {
+					sub.cancel();
+					done.completeExceptionally(e);
+					return;
+				}
+				if(++n % batch == 0) sub.request(batch);
+			}
+			public void onError(Throwable t){ done.completeExceptionally(t); }
+			public void onComplete(){ done.complete(n); }
+		});
+		try {
+			long n = done.get();
+			out.flush();
+			return BigInteger.valueOf(n);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+	
+	/**
+	 * Conta le soluzioni con {@link CheckpointedCount}, salvando lo stato nel file dato con
+	 * <code>--checkpoint</code> ogni <code>--checkpoint-interval</code> secondi (default 60), con la
+	 * frontiera a profondita' <code>--frontier</code> (default 8).
+	 */
+	private static BigInteger checkpointed(SudokuBoard s, SolverConfig cfg, Options opt, ForkJoinPool pool) throws IOException {
+		if(opt.isDlx() || cfg.getLimit() > 0 || cfg.isDigitSymmetry())
+			throw new IllegalArgumentException("--checkpoint non supporta --backend=dlx, --limit, --unique e --symmetry");
+		int interval = opt.getInt("checkpoint-interval", 60);
+		if(interval < 1) throw new IllegalArgumentException("--checkpoint-interval: deve essere almeno 1");
+		CheckpointedCount c = new CheckpointedCount(Paths.get(opt.get("checkpoint", null)), opt, cfg);
+		BigInteger res = c.count(s, pool, opt.getInt("frontier", 8), interval * 1000L);
+		System.out.println("Sotto-problemi contati: "+c.getProblems());
+		return res;
+	}
+	
+	public static BigInteger sudokuSolve(SudokuBoard s){
+		return sudokuSolve(s, new SolverConfig());
+	}
+	
+	/**
+	 * @param s Istanza di {@link SudokuBoard}.
+	 * @param cfg parametri della ricerca.
+	 * @return Il numero esatto di soluzioni legali.
+	 */
+	public static BigInteger sudokuSolve(SudokuBoard s, SolverConfig cfg){
+		return sudokuSolve(s, cfg, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * @param s Istanza di {@link SudokuBoard}.
+	 * @param cfg parametri della ricerca.
+	 * @param pool pool in cui eseguire la ricerca.
+	 * @return Il numero esatto di soluzioni legali.
+	 */
+	public static BigInteger sudokuSolve(SudokuBoard s, SolverConfig cfg, ForkJoinPool pool){
+		SolutionCounter counter = new SolutionCounter();
+		if(!cfg.getPropagator().propagate(s)) return BigInteger.ZERO;
+		BigInteger factor = cfg.symmetryFactor(s);
 		//Forkjoinpool per passare la funzione
-		return ForkJoinPool.commonPool().invoke(new SudokuSolver(s));
-		
+		pool.invoke(new SudokuSolver(s, cfg, counter));
+		return counter.sum().multiply(factor);
 	}
 }
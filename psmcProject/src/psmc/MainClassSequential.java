@@ -1,14 +1,19 @@
 package psmc;
 
-import java.io.FileReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
 import java.util.Iterator;
 
-import psmc.sudokupart.Block;
-import psmc.sudokupart.SudokuInstance;
+import psmc.dlx.DancingLinks;
+import psmc.sudokupart.Grids;
+import psmc.sudokupart.SudokuBoard;
 
 /**
  * Classe da chiamare per l'esecuzione sequenziale.
+ * Uso: <code>java psmc.MainClassSequential [opzioni] file</code>, vedi {@link Options}.
  *
  * @author  Mattia Paolacci
  */
@@ -17,8 +22,9 @@ public class MainClassSequential {
 	public static void main(String args[]) throws IOException
 	{		
 		
-		FileReader f = new FileReader(args[0]);
-		SudokuInstance s = new SudokuInstance(f);
+		Options opt = Options.parse(args);
+		SudokuBoard s = opt.readBoard();
+		SolverConfig cfg = opt.solverConfig();
 
 		// Inizializza la matrice con i possibili valori legali per ogni blocco.
 		s.findLegalValue();
@@ -31,58 +37,203 @@ public class MainClassSequential {
 		
 		// cerco se ci sono soluzioni immediate. Ossia blocche con un'unica soluzione lagale.
 		s.findBlockWithOneLegalValue();
+		SudokuBoard check = opt.has("verify-symmetry") ? s.clona() : null;
+		SolutionSink sink = opt.solutionSink(s.getGeometry());
+		if(sink != null) cfg.setListener(sink);
 
 		// Start algoritmo
-		int res = recursiveResolutor(s);
+		long start = System.nanoTime();
+		CountResult r;
+		if(opt.has("solutions")) r = printSolutions(s, cfg);
+		else r = cfg.result(opt.isDlx() ? DancingLinks.count(s, cfg) : recursiveResolutor(s, cfg));
+		if(sink != null) sink.close();
+		long time = (System.nanoTime() - start) / 1000000;
 		
 		System.out.println("Dimensione spazio soluzioni: "+spaceSol);
 		System.out.println("Fattore di riempimento: "+perc+"%");
-		System.out.println("Soluzioni Legali: "+ res);
+		System.out.println(opt.isDlx() ? "Motore: dlx" : "Propagazione: "+cfg.getPropagator());
+		System.out.println("Nodi visitati: "+cfg.getNodes());
+		if(cfg.getMetrics() != null) System.out.println("Metriche: "+cfg.getMetrics());
+		if(opt.cache() != null) System.out.println("Cache: "+opt.cache());
+		if(sink != null) System.out.println("Soluzioni scritte: "+sink);
+		System.out.println("Tempo: "+time+" ms");
+		System.out.println("Soluzioni Legali: "+ r);
+		if(cfg.getLimit() > 0) System.out.println("Soluzione: "+r.uniqueness());
+		if(check != null){
+			BigInteger exact = recursiveResolutor(check, opt.solverConfig().setDigitSymmetry(false).setMetrics(null));
+			System.out.println("Verifica simmetria: "+(exact.equals(r.getCount()) ? "ok" : "ERRORE, senza riduzione "+exact));
+		}
+	}
+	
+	/**
+	 * Scrive sullo standard output le soluzioni, una per riga, man mano che vengono trovate.
+	 * 
+	 * @param s Istanza di {@link SudokuBoard}
+	 * @param cfg parametri della ricerca.
+	 * @return Il numero di soluzioni scritte, non esatto se la ricerca e' stata fermata dal limite.
+	 * @throws IOException
+	 */
+	private static CountResult printSolutions(SudokuBoard s, SolverConfig cfg) throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+		long n = 0;
+		Iterator<byte[]> it = Solutions.iterator(s, cfg);
+		while(it.hasNext()){
+			out.write(Grids.toLine(it.next()));
+			out.write('\n');
+			n++;
+		}
+		out.flush();
+		return cfg.result(BigInteger.valueOf(n));
 	}
 	
 	/**
 	 * Algoritmo sequenziale per la ricerca del numero di soluzioni legali di un
 	 * istanza di sudoku.
 	 * 
-	 * @param s Istanza di {@link SudokuInstance}
+	 * @param s Istanza di {@link SudokuBoard}
 	 * @return Il numero di soluzioni legali del sudoku dato in input.
 	 */
-	public static Integer recursiveResolutor(SudokuInstance s){
-		int result = 0;
-		return recursiveResolutor(s, result);
+	public static BigInteger recursiveResolutor(SudokuBoard s){
+		return recursiveResolutor(s, new SolverConfig());
 	}
 	
-	private static Integer recursiveResolutor(SudokuInstance s, int result){
+	/**
+	 * Algoritmo sequenziale per la ricerca del numero di soluzioni legali di un
+	 * istanza di sudoku, con i parametri di ricerca dati.
+	 * 
+	 * @param s Istanza di {@link SudokuBoard}
+	 * @param cfg parametri della ricerca.
+	 * @return Il numero esatto di soluzioni legali del sudoku dato in input.
+	 */
+	public static BigInteger recursiveResolutor(SudokuBoard s, SolverConfig cfg){
+		SolutionCounter.Cell result = new SolutionCounter.Cell();
+		if(!cfg.getPropagator().propagate(s)) return BigInteger.ZERO;
+		BigInteger factor = cfg.symmetryFactor(s);
+		recursiveResolutor(s, cfg, result, 0);
+		return result.value().multiply(factor);
+	}
+	
+	/**
+	 * Conta le soluzioni del sotto-albero di s, aggiungendole a result. Sceglie la ricerca
+	 * sul posto o con copie in base a cfg.
+	 * 
+	 * @param s Istanza di {@link SudokuBoard}
+	 * @param cfg parametri della ricerca.
+	 * @param result contatore a cui aggiungere le soluzioni trovate.
+	 * @param depth profondita' di s nell'albero di ricerca.
+	 */
+	static void recursiveResolutor(SudokuBoard s, SolverConfig cfg, SolutionCounter.Cell result, int depth){
+		if(cfg.isInPlace()) recursiveResolutorInPlace(s, cfg, result, depth);
+		else recursiveResolutorCopy(s, cfg, result, depth);
+	}
+	
+	private static void recursiveResolutorCopy(SudokuBoard s, SolverConfig cfg, SolutionCounter.Cell result, int depth){
+		if(cfg.isCancelled()) return;
+		cfg.nodeVisited(depth);
 		if(s.isComplete()) {
-			return result + 1;
+			result.increment();
+			cfg.solutionFound(s);
+			return;
 		}
-		Block b = s.getFirstBlockEmpty();
-		Iterator<Byte> ite = b.getIteratorSetLegal();
-		while(ite.hasNext()){
-			int v = ite.next();
-			SudokuInstance sCopy = ite.hasNext() ? s.clona() : s;
-			sCopy.getBlock(b.getX(), b.getY()).setVal(v);
-			if(isLegalInstance(sCopy)) 
-				result += recursiveResolutor(sCopy);
+		SubtreeCache cache = cfg.getCache();
+		if(cache == null || !cache.accepts(s.getEmptyCount())){
+			branchCopy(s, cfg, result, depth);
+			return;
 		}
-		return result;
+		// s puo' essere riusata dall'ultimo figlio: chiave e blocchi vuoti vanno letti prima.
+		long key = cfg.cacheKey(s);
+		int empty = s.getEmptyCount();
+		if(cache.lookup(key, empty, result)) return;
+		SolutionCounter.Cell sub = new SolutionCounter.Cell();
+		branchCopy(s, cfg, sub, depth);
+		store(cache, cfg, key, empty, sub.value(), result);
+	}
+	
+	/**
+	 * Esplora i figli di s con una copia per ramo.
+	 */
+	private static void branchCopy(SudokuBoard s, SolverConfig cfg, SolutionCounter.Cell result, int depth){
+		int b = cfg.getStrategy().selectCell(s);
+		int[] values = new int[s.getGeometry().getSize()];
+		int n = cfg.getStrategy().orderValues(s, b, values);
+		int empty = s.getEmptyCount();
+		for(int i = 0; i<n; i++){
+			SudokuBoard sCopy = i < n-1 ? s.clona() : s;
+			sCopy.setVal(b, values[i]);
+			boolean legal = isLegalInstance(sCopy) && cfg.getPropagator().propagate(sCopy);
+			cfg.branchTried(legal, empty - sCopy.getEmptyCount() - 1);
+			if(legal) recursiveResolutorCopy(sCopy, cfg, result, depth+1);
+		}
+	}
+
+	/**
+	 * Come la ricerca con copie, ma esplora i rami modificando l'istanza sul posto:
+	 * prima di ogni tentativo si prende un checkpoint, e dopo si annullano le modifiche con
+	 * {@link SudokuBoard#rollback(int)}, senza mai copiare l'istanza.
+	 * 
+	 * @param s Istanza di {@link SudokuBoard}, al termine torna allo stato iniziale.
+	 * @param cfg parametri della ricerca.
+	 * @param result contatore a cui aggiungere le soluzioni trovate.
+	 * @param depth profondita' di s nell'albero di ricerca.
+	 */
+	private static void recursiveResolutorInPlace(SudokuBoard s, SolverConfig cfg, SolutionCounter.Cell result, int depth){
+		if(cfg.isCancelled()) return;
+		cfg.nodeVisited(depth);
+		if(s.isComplete()){
+			result.increment();
+			cfg.solutionFound(s);
+			return;
+		}
+		SubtreeCache cache = cfg.getCache();
+		if(cache == null || !cache.accepts(s.getEmptyCount())){
+			branchInPlace(s, cfg, result, depth);
+			return;
+		}
+		long key = cfg.cacheKey(s);
+		int empty = s.getEmptyCount();
+		if(cache.lookup(key, empty, result)) return;
+		SolutionCounter.Cell sub = new SolutionCounter.Cell();
+		branchInPlace(s, cfg, sub, depth);
+		store(cache, cfg, key, empty, sub.value(), result);
+	}
+	
+	/**
+	 * Esplora i figli di s sul posto, annullando ogni ramo con {@link SudokuBoard#rollback(int)}.
+	 */
+	private static void branchInPlace(SudokuBoard s, SolverConfig cfg, SolutionCounter.Cell result, int depth){
+		int b = cfg.getStrategy().selectCell(s);
+		int[] values = new int[s.getGeometry().getSize()];
+		int n = cfg.getStrategy().orderValues(s, b, values);
+		int empty = s.getEmptyCount();
+		for(int i = 0; i<n; i++){
+			int mark = s.checkpoint();
+			s.setVal(b, values[i]);
+			boolean legal = isLegalInstance(s) && cfg.getPropagator().propagate(s);
+			cfg.branchTried(legal, empty - s.getEmptyCount() - 1);
+			if(legal) recursiveResolutorInPlace(s, cfg, result, depth+1);
+			s.rollback(mark);
+		}
+	}
+
+	/**
+	 * Aggiunge a result le n soluzioni di un sotto-albero, e le memorizza nella cache se il conteggio
+	 * e' completo.
+	 */
+	static void store(SubtreeCache cache, SolverConfig cfg, long key, int empty, BigInteger n,
+			SolutionCounter.Cell result){
+		// un sotto-albero interrotto non e' stato contato tutto.
+		if(!cfg.isCancelled()) cache.store(key, empty, n);
+		result.add(n);
 	}
 
 	/**
 	 * La legalità viene verificata controllando se ci sia un blocco con 0 soluzioni legali.
+	 * L'istanza tiene aggiornato il flag ad ogni valore tolto, quindi il controllo è immediato.
 	 * 
-	 * @param s Istanza di {@link SudokuInstance}, della quale bisogna verificare se sia legale 
+	 * @param s Istanza di {@link SudokuBoard}, della quale bisogna verificare se sia legale 
 	 * @return {@link Boolean}, True se legale, false altrimenti.
 	 */
-	protected static boolean isLegalInstance(SudokuInstance s){
-		for(int i = 0; i<9; i++){
-			for(int j = 0; j<9; j++){
-				if(s.getBlock(j, i).isEmpty())
-					if(s.getBlock(j, i).getDimSetLegalSol() == 0)
-						return false;
-			}
-		}
-		return true;
+	protected static boolean isLegalInstance(SudokuBoard s){
+		return !s.hasContradiction();
 	}
 }
-
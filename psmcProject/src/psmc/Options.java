@@ -0,0 +1,297 @@
+package psmc;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import psmc.branching.BranchingStrategy;
+import psmc.branching.DigitSymmetry;
+import psmc.branching.FrequencyValueOrder;
+import psmc.branching.MrvDegreeStrategy;
+import psmc.branching.MrvStrategy;
+import psmc.branching.RowMajorStrategy;
+import psmc.io.BinaryFormat;
+import psmc.io.PuzzleReader;
+import psmc.io.PuzzleSource;
+import psmc.sudokupart.Geometry;
+import psmc.sudokupart.MaskSudokuInstance;
+import psmc.sudokupart.Propagator;
+import psmc.sudokupart.SudokuBoard;
+import psmc.sudokupart.SudokuInstance;
+
+/**
+ * Opzioni da riga di comando, comuni alle classi main. Le opzioni hanno la forma
+ * <code>--nome=valore</code> (oppure <code>--nome</code>), gli altri argomenti sono posizionali.
+ * <p>
+ * Opzioni riconosciute:
+ * <ul>
+ * <li><code>--board=object|mask</code> rappresentazione dell'istanza: grafo di {@link SudokuInstance}
+ * (default per il 9x9) o maschere di bit di {@link MaskSudokuInstance}, l'unica per 16x16 e 25x25.</li>
+ * <li><code>--search=copy|trail</code> ricerca con una copia dell'istanza per ogni ramo (default) o sul
+ * posto, annullando le modifiche con {@link SudokuBoard#rollback(int)}.</li>
+ * <li><code>--strategy=rowmajor|mrv|mrv-degree</code> scelta del blocco su cui ramificare: il primo
+ * vuoto per righe (default), quello con meno valori legali, o quest'ultimo con spareggio sul grado.</li>
+ * <li><code>--value-order=natural|frequency</code> ordine dei valori provati: crescente (default) o
+ * per frequenza negli insiemi dei valori legali.</li>
+ * <li><code>--cutoff-empty=N</code>, <code>--cutoff-depth=D</code>, <code>--cutoff-surplus=S</code> soglie
+ * della {@link GranularityPolicy}: il solutore parallelo passa al sequenziale quando restano al piu' N blocchi
+ * vuoti, alla profondita' D, o con piu' di S task in eccesso in coda. Di default sono disattivate.</li>
+ * <li><code>--propagation=naked|hidden|locked</code> livello del {@link Propagator} applicato dopo ogni
+ * assegnamento: solo blocchi con un valore legale (default), anche valori con un solo posto in un'unita',
+ * anche candidati bloccati.</li>
+ * <li><code>--backend=backtrack|dlx</code> motore di conteggio: la ricerca con backtracking sull'istanza
+ * (default) o la copertura esatta con {@link psmc.dlx.DancingLinks}, che ignora strategia, ricerca e
+ * propagazione.</li>
+ * <li><code>--limit=N</code> ferma la ricerca alla N-esima soluzione: il risultato e' esatto se le soluzioni
+ * sono meno di N, altrimenti e' un limite inferiore. <code>--unique</code> equivale a <code>--limit=2</code>.</li>
+ * <li><code>--solutions</code> scrive anche le soluzioni, una per riga, man mano che vengono trovate;
+ * usa sempre il backtracking, vedi {@link Solutions}.</li>
+ * <li><code>--solutions-file=file</code> scrive le soluzioni nel file, nel formato binario di
+ * {@link psmc.io.BinaryFormat}, con un {@link SolutionSink}: <code>--sink-buffer=KB</code> e' il buffer di
+ * ogni thread (default 256 KB), <code>--sink-pending=N</code> il numero di buffer pieni oltre il quale la
+ * ricerca aspetta lo scrittore (default 16), <code>--compress</code> comprime i buffer. Non si usa con
+ * <code>--solutions</code>, <code>--checkpoint</code> e la copertura esatta.</li>
+ * <li><code>--dlx-split=D</code> livelli della copertura esatta divisi in task dal solutore parallelo, di
+ * default 2.</li>
+ * <li><code>--pool=dedicated|common</code> pool della ricerca parallela: uno dedicato (default) o il pool
+ * comune della JVM, vedi {@link Scheduler}. Per quello dedicato <code>--parallelism=N</code> ne fissa i thread,
+ * di default uno per processore, e <code>--async</code> sceglie la modalita' FIFO.</li>
+ * <li><code>--pool-sample=MS</code> intervallo di campionamento delle statistiche del pool, di default 100 ms.</li>
+ * <li><code>--checkpoint=file</code> solo per {@link MainClassParallel}: salva lo stato del conteggio nel file
+ * ogni <code>--checkpoint-interval=S</code> secondi (default 60) e, se il file esiste, riprende da quello;
+ * vedi {@link CheckpointedCount}. <code>--frontier=D</code> e' la profondita' dei sotto-problemi, di default 8.</li>
+ * <li><code>--symmetry</code> conta solo le soluzioni canoniche rispetto ai valori che non compaiono nel
+ * sudoku e moltiplica per k!, vedi {@link DigitSymmetry}; non si combina con <code>--limit</code>,
+ * <code>--solutions</code> e <code>--checkpoint</code>, e la copertura esatta la ignora.
+ * <code>--verify-symmetry</code> ripete il conteggio senza riduzione e confronta i due risultati.</li>
+ * <li><code>--cache=MB</code> memorizza il numero di soluzioni dei sotto-alberi in una {@link SubtreeCache}
+ * di MB megabyte, condivisa da tutte le ricerche create da queste opzioni; solo i nodi con almeno
+ * <code>--cache-min-empty=N</code> blocchi vuoti (default 40) vengono cercati e memorizzati. Non si usa con
+ * <code>--limit</code> e <code>--solutions</code>.</li>
+ * <li><code>--jmx</code> raccoglie i contatori dettagliati di {@link SolverMetrics} e li pubblica via JMX
+ * durante la ricerca.</li>
+ * </ul>
+ *
+ * @author  Mattia Paolacci
+ */
+public class Options {
+
+	private final Map<String, String> valori = new HashMap<String, String>();
+	private final List<String> argomenti = new ArrayList<String>();
+	private SolverMetrics metrics;
+	private SubtreeCache cache;
+
+	private Options(){}
+
+	/**
+	 * @param args argomenti passati al main.
+	 * @return Le opzioni lette.
+	 */
+	public static Options parse(String[] args){
+		Options o = new Options();
+		for(String a : args){
+			if(a.startsWith("--")){
+				int eq = a.indexOf('=');
+				if(eq < 0) o.valori.put(a.substring(2), "true");
+				else o.valori.put(a.substring(2, eq), a.substring(eq+1));
+			}
+			else o.argomenti.add(a);
+		}
+		return o;
+	}
+
+	/**
+	 * @param key nome dell'opzione.
+	 * @return true se l'opzione e' presente.
+	 */
+	public boolean has(String key){ return valori.containsKey(key); }
+
+	/**
+	 * @param key nome dell'opzione.
+	 * @param def valore di default.
+	 * @return Il valore dell'opzione, def se assente.
+	 */
+	public String get(String key, String def){
+		String v = valori.get(key);
+		return v == null ? def : v;
+	}
+
+	/**
+	 * @param key nome dell'opzione.
+	 * @param def valore di default.
+	 * @return Il valore intero dell'opzione, def se assente.
+	 * @throws IllegalArgumentException se il valore non e' un intero.
+	 */
+	public int getInt(String key, int def){
+		String v = valori.get(key);
+		if(v == null) return def;
+		try {
+			return Integer.parseInt(v);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("--"+key+": intero atteso, trovato '"+v+"'");
+		}
+	}
+
+	/**
+	 * @param i posizione dell'argomento.
+	 * @return L'i-esimo argomento posizionale.
+	 * @throws IllegalArgumentException se l'argomento manca.
+	 */
+	public String getArgument(int i){
+		if(i >= argomenti.size())
+			throw new IllegalArgumentException("argomento mancante in posizione "+i);
+		return argomenti.get(i);
+	}
+
+	/**
+	 * @return I parametri della ricerca scelti con <code>--search</code>, <code>--strategy</code>,
+	 * <code>--value-order</code>, <code>--propagation</code>, <code>--limit</code>, <code>--symmetry</code>,
+	 * <code>--cache</code>, <code>--jmx</code> e le soglie
+	 * <code>--cutoff-*</code>.
+	 */
+	public SolverConfig solverConfig(){
+		SolverConfig cfg = new SolverConfig();
+		String search = get("search", "copy");
+		if(search.equals("trail")) cfg.setInPlace(true);
+		else if(!search.equals("copy"))
+			throw new IllegalArgumentException("--search: valore sconosciuto '"+search+"'");
+		
+		BranchingStrategy strategy;
+		String name = get("strategy", "rowmajor");
+		if(name.equals("rowmajor")) strategy = new RowMajorStrategy();
+		else if(name.equals("mrv")) strategy = new MrvStrategy();
+		else if(name.equals("mrv-degree")) strategy = new MrvDegreeStrategy();
+		else throw new IllegalArgumentException("--strategy: valore sconosciuto '"+name+"'");
+		
+		String order = get("value-order", "natural");
+		if(order.equals("frequency")) strategy = new FrequencyValueOrder(strategy);
+		else if(!order.equals("natural"))
+			throw new IllegalArgumentException("--value-order: valore sconosciuto '"+order+"'");
+		cfg.setStrategy(strategy);
+		
+		String level = get("propagation", "naked");
+		Propagator propagator = Propagator.forName(level);
+		if(propagator == null)
+			throw new IllegalArgumentException("--propagation: valore sconosciuto '"+level+"'");
+		cfg.setPropagator(propagator);
+		
+		cfg.setLimit(has("unique") ? 2 : getInt("limit", 0));
+		if(has("symmetry")){
+			// con un limite o le soluzioni scritte conta ogni singola soluzione, non le classi.
+			if(cfg.getLimit() > 0 || has("solutions") || has("solutions-file"))
+				throw new IllegalArgumentException("--symmetry non si combina con --limit, --unique, --solutions e --solutions-file");
+			cfg.setDigitSymmetry(true);
+		}
+		cfg.setMetrics(metrics());
+		cfg.setCache(cache());
+		
+		if(has("cutoff-empty") || has("cutoff-depth") || has("cutoff-surplus"))
+			cfg.setGranularity(new GranularityPolicy(getInt("cutoff-empty", -1),
+					getInt("cutoff-depth", -1), getInt("cutoff-surplus", -1)));
+		return cfg;
+	}
+
+	/**
+	 * @return I contatori dettagliati, gli stessi per tutti i parametri creati da queste opzioni e registrati
+	 * via JMX alla prima chiamata; null senza <code>--jmx</code>.
+	 */
+	public synchronized SolverMetrics metrics(){
+		if(metrics == null && has("jmx")) metrics = new SolverMetrics().register();
+		return metrics;
+	}
+
+	/**
+	 * @return La cache dei sotto-alberi, la stessa per tutti i parametri creati da queste opzioni;
+	 * null senza <code>--cache</code>.
+	 */
+	public synchronized SubtreeCache cache(){
+		if(cache == null && has("cache")){
+			int mb = getInt("cache", 0);
+			if(mb < 1) throw new IllegalArgumentException("--cache: servono almeno 1 MB");
+			cache = new SubtreeCache(mb * (1L << 20), getInt("cache-min-empty", 40));
+		}
+		return cache;
+	}
+
+	/**
+	 * @param g geometria del sudoku da risolvere.
+	 * @return Il {@link SolutionSink} del file dato con <code>--solutions-file</code>, con il buffer di
+	 * <code>--sink-buffer</code>, l'attesa di <code>--sink-pending</code> e la compressione di
+	 * <code>--compress</code>; null senza <code>--solutions-file</code>. Va chiuso a fine ricerca.
+	 * @throws IOException se il file non si puo' creare.
+	 */
+	public SolutionSink solutionSink(Geometry g) throws IOException {
+		if(!has("solutions-file")) return null;
+		if(has("solutions") || has("checkpoint") || isDlx())
+			throw new IllegalArgumentException("--solutions-file non si combina con --solutions, --checkpoint e --backend=dlx");
+		int kb = getInt("sink-buffer", 256);
+		if(kb < 1) throw new IllegalArgumentException("--sink-buffer: serve almeno 1 KB");
+		int pending = getInt("sink-pending", 16);
+		if(pending < 1) throw new IllegalArgumentException("--sink-pending: deve essere almeno 1");
+		return new SolutionSink(Paths.get(get("solutions-file", null)), g, kb << 10, pending, has("compress"));
+	}
+
+	/**
+	 * @return Il pool scelto con <code>--pool</code>, <code>--parallelism</code> e <code>--async</code>, con
+	 * il campionamento delle statistiche gia' avviato; va chiuso a fine ricerca.
+	 */
+	public Scheduler scheduler(){
+		String pool = get("pool", "dedicated");
+		Scheduler scheduler;
+		if(pool.equals("common")) scheduler = Scheduler.common();
+		else if(pool.equals("dedicated")){
+			int parallelism = getInt("parallelism", Runtime.getRuntime().availableProcessors());
+			if(parallelism < 1) throw new IllegalArgumentException("--parallelism: deve essere almeno 1");
+			scheduler = Scheduler.dedicated(parallelism, has("async"));
+		}
+		else throw new IllegalArgumentException("--pool: valore sconosciuto '"+pool+"'");
+		int period = getInt("pool-sample", 100);
+		if(period < 1) throw new IllegalArgumentException("--pool-sample: deve essere almeno 1");
+		return scheduler.startSampling(period);
+	}
+
+	/**
+	 * @return true se con <code>--backend</code> e' stata scelta la copertura esatta.
+	 */
+	public boolean isDlx(){
+		String backend = get("backend", "backtrack");
+		if(backend.equals("dlx")) return true;
+		if(!backend.equals("backtrack"))
+			throw new IllegalArgumentException("--backend: valore sconosciuto '"+backend+"'");
+		return false;
+	}
+
+	/**
+	 * Legge l'istanza di sudoku dal file dato come primo argomento, nella rappresentazione
+	 * scelta con <code>--board</code>. Il file puo' essere nel formato a N righe o a una riga, anche 16x16 o 25x25,
+	 * vedi {@link PuzzleReader}, o nel formato binario di {@link BinaryFormat}; se contiene piu' sudoku viene letto il primo.
+	 * @return L'istanza letta, non ancora inizializzata con {@link SudokuBoard#findLegalValue()}.
+	 * @throws IOException se il file non contiene un sudoku valido.
+	 */
+	public SudokuBoard readBoard() throws IOException {
+		int[] grid = new int[PuzzleReader.MAX_CELLS];
+		int cells;
+		try(PuzzleSource r = PuzzleSource.open(Paths.get(getArgument(0)))){
+			cells = r.next(grid);
+			if(cells == 0) throw new IOException(getArgument(0)+": nessun sudoku nel file");
+		}
+		return newBoard(Arrays.copyOf(grid, cells));
+	}
+
+	/**
+	 * Crea un'istanza di sudoku nella rappresentazione scelta con <code>--board</code>. Se l'opzione
+	 * manca si usa {@link SudokuInstance} per il 9x9 e {@link MaskSudokuInstance} per le altre dimensioni.
+	 * @param grid valori dei blocchi, indicizzati per y*N+x, 0 se vuoto; la lunghezza decide la dimensione.
+	 * @return L'istanza, non ancora inizializzata con {@link SudokuBoard#findLegalValue()}.
+	 */
+	public SudokuBoard newBoard(int[] grid){
+		String board = get("board", grid.length == 81 ? "object" : "mask");
+		if(board.equals("object")) return new SudokuInstance(grid);
+		if(board.equals("mask")) return new MaskSudokuInstance(grid);
+		throw new IllegalArgumentException("--board: valore sconosciuto '"+board+"'");
+	}
+}
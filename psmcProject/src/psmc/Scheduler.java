@@ -0,0 +1,246 @@
+package psmc;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool su cui girano i task della ricerca parallela ({@link SudokuSolver}, {@link psmc.dlx.DlxSolver},
+ * {@link SolutionPublisher}) e statistiche sul suo uso.
+ * <p>
+ * Di default il pool e' dedicato: ha il parallelismo richiesto, thread con nome "psmc-worker-N" e puo'
+ * usare la modalita' asincrona (FIFO) del {@link ForkJoinPool}, che esegue i task locali nell'ordine in cui
+ * sono stati creati invece che dall'ultimo. In alternativa si puo' usare il pool comune, che non viene
+ * chiuso da {@link #close()}.
+ * <p>
+ * Con {@link #startSampling(long)} un thread separato campiona ad intervalli regolari i thread attivi e
+ * i task in coda; {@link #stats()} riassume i campioni insieme ai furti di task del pool.
+ *
+ * @author  Mattia Paolacci
+ */
+public class Scheduler implements AutoCloseable {
+
+	/**
+	 * Numero massimo di campioni conservati: oltre, i campioni vengono dimezzati unendoli a coppie
+	 * e l'intervallo raddoppia.
+	 */
+	static final int MAX_SAMPLES = 1024;
+
+	private final ForkJoinPool pool;
+	private final boolean dedicated;
+	private final long startSteals;
+
+	private ScheduledExecutorService sampler;
+	private ScheduledFuture<?> sampling;
+
+	/**
+	 * Campioni dei thread attivi e dei task in coda; sampleEvery campionamenti formano un campione.
+	 */
+	private final int[] active = new int[MAX_SAMPLES];
+	private final long[] queued = new long[MAX_SAMPLES];
+	private int samples, sampleEvery = 1, pending;
+	private long periodMillis;
+	private int maxActive;
+	private long maxQueued;
+
+	private Scheduler(ForkJoinPool pool, boolean dedicated){
+		this.pool = pool;
+		this.dedicated = dedicated;
+		startSteals = pool.getStealCount();
+	}
+
+	/**
+	 * @param parallelism numero di thread del pool.
+	 * @param asyncMode true per la modalita' FIFO dei task locali.
+	 * @return Un pool dedicato alla ricerca.
+	 */
+	public static Scheduler dedicated(int parallelism, boolean asyncMode){
+		ForkJoinPool.ForkJoinWorkerThreadFactory factory = new ForkJoinPool.ForkJoinWorkerThreadFactory(){
+			@Override
+			public ForkJoinWorkerThread newThread(ForkJoinPool p){
+				ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+				t.setName("psmc-worker-"+t.getPoolIndex());
+				return t;
+			}
+		};
+		return new Scheduler(new ForkJoinPool(parallelism, factory, null, asyncMode), true);
+	}
+
+	/**
+	 * @return Il pool comune della JVM.
+	 */
+	public static Scheduler common(){
+		return new Scheduler(ForkJoinPool.commonPool(), false);
+	}
+
+	public ForkJoinPool getPool(){ return pool; }
+
+	/**
+	 * Avvia il campionamento dei thread attivi e dei task in coda.
+	 * @param periodMillis intervallo tra due campioni, in millisecondi.
+	 * @return this
+	 */
+	public synchronized Scheduler startSampling(long periodMillis){
+		if(sampler != null) return this;
+		this.periodMillis = periodMillis;
+		sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "psmc-pool-sampler");
+			t.setDaemon(true);
+			return t;
+		});
+		sampling = sampler.scheduleAtFixedRate(this::sample, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+		return this;
+	}
+
+	/**
+	 * Prende un campione; ogni campione conservato e' la media di sampleEvery campionamenti.
+	 */
+	private synchronized void sample(){
+		int a = pool.getActiveThreadCount();
+		long q = pool.getQueuedTaskCount() + pool.getQueuedSubmissionCount();
+		if(a > maxActive) maxActive = a;
+		if(q > maxQueued) maxQueued = q;
+		if(samples == MAX_SAMPLES){
+			for(int i = 0; i<MAX_SAMPLES/2; i++){
+				active[i] = active[2*i] + active[2*i+1];
+				queued[i] = queued[2*i] + queued[2*i+1];
+			}
+			samples = MAX_SAMPLES/2;
+			sampleEvery *= 2;
+		}
+		if(pending == 0){
+			active[samples] = 0;
+			queued[samples] = 0;
+		}
+		active[samples] += a;
+		queued[samples] += q;
+		if(++pending == sampleEvery){
+			samples++;
+			pending = 0;
+		}
+	}
+
+	/**
+	 * @return Le statistiche del pool dall'inizio del campionamento.
+	 */
+	public synchronized Stats stats(){
+		double[] a = new double[samples];
+		double[] q = new double[samples];
+		for(int i = 0; i<samples; i++){
+			a[i] = (double) active[i] / sampleEvery;
+			q[i] = (double) queued[i] / sampleEvery;
+		}
+		return new Stats(pool.getParallelism(), pool.getAsyncMode(), pool.getStealCount() - startSteals,
+				maxActive, maxQueued, periodMillis * sampleEvery, a, q);
+	}
+
+	/**
+	 * Ferma il campionamento e, se il pool e' dedicato, lo chiude attendendo i task in corso.
+	 */
+	@Override
+	public synchronized void close(){
+		if(sampler != null){
+			sampling.cancel(false);
+			sampler.shutdown();
+		}
+		if(dedicated){
+			pool.shutdown();
+			try {
+				pool.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Statistiche di un {@link Scheduler}: parallelismo, furti di task, massimi e andamento nel tempo dei
+	 * thread attivi e dei task in coda.
+	 */
+	public static final class Stats {
+
+		private final int parallelism;
+		private final boolean asyncMode;
+		private final long steals;
+		private final int maxActive;
+		private final long maxQueued;
+		private final long periodMillis;
+		private final double[] active, queued;
+
+		Stats(int parallelism, boolean asyncMode, long steals, int maxActive, long maxQueued,
+				long periodMillis, double[] active, double[] queued){
+			this.parallelism = parallelism;
+			this.asyncMode = asyncMode;
+			this.steals = steals;
+			this.maxActive = maxActive;
+			this.maxQueued = maxQueued;
+			this.periodMillis = periodMillis;
+			this.active = active;
+			this.queued = queued;
+		}
+
+		public int getParallelism(){ return parallelism; }
+
+		public boolean isAsyncMode(){ return asyncMode; }
+
+		/**
+		 * @return I task rubati da un thread alla coda di un altro.
+		 */
+		public long getSteals(){ return steals; }
+
+		public int getMaxActive(){ return maxActive; }
+
+		public long getMaxQueued(){ return maxQueued; }
+
+		/**
+		 * @return L'intervallo coperto da ogni campione, in millisecondi.
+		 */
+		public long getPeriodMillis(){ return periodMillis; }
+
+		/**
+		 * @return I thread attivi in media in ogni intervallo.
+		 */
+		public double[] getActive(){ return active.clone(); }
+
+		/**
+		 * @return I task in coda in media in ogni intervallo.
+		 */
+		public double[] getQueued(){ return queued.clone(); }
+
+		/**
+		 * @return I thread attivi in media su tutti i campioni.
+		 */
+		public double getMeanActive(){
+			double sum = 0;
+			for(double a : active) sum += a;
+			return active.length == 0 ? 0 : sum / active.length;
+		}
+
+		/**
+		 * @param points numero massimo di valori.
+		 * @return L'andamento dei thread attivi, ridotto a al piu' points medie arrotondate, preceduto
+		 * dall'intervallo coperto da ogni valore.
+		 */
+		public String activeTimeline(int points){
+			int step = Math.max(1, (active.length + points - 1) / points);
+			StringBuilder sb = new StringBuilder("ogni "+periodMillis*step+" ms:");
+			for(int i = 0; i<active.length; i += step){
+				double sum = 0;
+				int n = 0;
+				for(int j = i; j<Math.min(active.length, i+step); j++, n++) sum += active[j];
+				sb.append(' ').append(Math.round(sum / n));
+			}
+			return sb.toString();
+		}
+
+		@Override
+		public String toString(){
+			return "parallelismo "+parallelism+(asyncMode ? " (async)" : "")+", furti "+steals
+					+", thread attivi medi "+String.format("%.1f", getMeanActive())+" (max "+maxActive+")"
+					+", task in coda max "+maxQueued;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package psmc;
+
+import java.math.BigInteger;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Conteggio delle soluzioni senza boxing e senza overflow.
+ * <p>
+ * Ogni thread accumula su un proprio {@link Cell}, un <code>long</code> senza sincronizzazione;
+ * solo quando il <code>long</code> traboccherebbe il suo valore viene spostato in un {@link BigInteger}.
+ * Il totale si legge con {@link #sum()} a ricerca terminata.
+ * <p>
+ * Il contatore di un sotto-albero, creato con {@link #subtree()}, non usa un {@link ThreadLocal}: ne
+ * servirebbe uno per ogni nodo, e ognuno lascerebbe una voce nella mappa di ogni thread. Ogni chiamata
+ * di {@link #local()} crea invece un nuovo {@link Cell}, che appartiene al task che l'ha chiesto.
+ *
+ * @author  Mattia Paolacci
+ */
+public class SolutionCounter {
+
+	/**
+	 * Contatore di un singolo thread.
+	 */
+	public static final class Cell {
+
+		private long count;
+
+		/**
+		 * Soluzioni spostate fuori da count prima che traboccasse.
+		 */
+		private BigInteger carry = BigInteger.ZERO;
+
+		/**
+		 * Aggiunge una soluzione.
+		 */
+		public void increment(){
+			if(count == Long.MAX_VALUE){
+				carry = carry.add(BigInteger.valueOf(count));
+				count = 0;
+			}
+			count++;
+		}
+
+		/**
+		 * Aggiunge n soluzioni.
+		 * @param n numero di soluzioni, non negativo.
+		 */
+		public void add(long n){
+			long r = count + n;
+			if(r < 0){
+				carry = carry.add(BigInteger.valueOf(count));
+				r = n;
+			}
+			count = r;
+		}
+
+		/**
+		 * Aggiunge n soluzioni.
+		 * @param n numero di soluzioni, non negativo.
+		 */
+		public void add(BigInteger n){
+			if(n.bitLength() < 63) add(n.longValue());
+			else carry = carry.add(n);
+		}
+
+		/**
+		 * @return Il valore esatto del contatore.
+		 */
+		public BigInteger value(){ return carry.add(BigInteger.valueOf(count)); }
+	}
+
+	private final ConcurrentLinkedQueue<Cell> cells = new ConcurrentLinkedQueue<Cell>();
+
+	/**
+	 * Contatori dei thread; null per il contatore di un sotto-albero.
+	 */
+	private final ThreadLocal<Cell> local;
+
+	public SolutionCounter(){
+		this(true);
+	}
+
+	private SolutionCounter(boolean threadLocal){
+		local = threadLocal ? ThreadLocal.withInitial(this::register) : null;
+	}
+
+	/**
+	 * @return Un contatore senza {@link ThreadLocal}, per le soluzioni di un solo sotto-albero: ogni task
+	 * deve chiedere il suo {@link Cell} una volta sola e passarlo ai figli che esplora da se'.
+	 */
+	public static SolutionCounter subtree(){ return new SolutionCounter(false); }
+
+	/**
+	 * @return Il contatore del thread corrente, creato alla prima chiamata; per il contatore di un
+	 * sotto-albero un nuovo contatore ad ogni chiamata.
+	 */
+	public Cell local(){ return local != null ? local.get() : register(); }
+
+	private Cell register(){
+		Cell c = new Cell();
+		cells.add(c);
+		return c;
+	}
+
+	/**
+	 * Somma i contatori di tutti i thread. Va chiamata quando la ricerca e' terminata.
+	 * @return Il numero esatto di soluzioni contate.
+	 */
+	public BigInteger sum(){
+		BigInteger tot = BigInteger.ZERO;
+		for(Cell c : cells) tot = tot.add(c.value());
+		return tot;
+	}
+}
@@ -0,0 +1,119 @@
+package psmc;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import psmc.sudokupart.Grids;
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Enumerazione pigra delle soluzioni: la ricerca sul posto di {@link MainClassSequential} con
+ * una pila esplicita al posto della ricorsione, che si ferma ad ogni soluzione trovata e
+ * riprende alla chiamata successiva di {@link #next()}.
+ *
+ * @author  Mattia Paolacci
+ */
+class SolutionIterator implements Iterator<byte[]> {
+
+	private final SudokuBoard s;
+	private final SolverConfig cfg;
+
+	/**
+	 * Pila dei nodi aperti: blocco su cui si ramifica, valori da provare, quanti sono, il prossimo
+	 * da provare e il checkpoint del tentativo in corso (-1 se nessuno).
+	 */
+	private final int[] cells, counts, next, marks;
+	private final int[][] values;
+	private int depth;
+
+	private boolean started;
+	private byte[] pending;
+
+	/**
+	 * @param s istanza inizializzata, modificata sul posto durante l'enumerazione.
+	 * @param cfg parametri della ricerca.
+	 */
+	SolutionIterator(SudokuBoard s, SolverConfig cfg){
+		this.s = s;
+		this.cfg = cfg;
+		int max = s.getGeometry().getCells() + 1;
+		cells = new int[max];
+		counts = new int[max];
+		next = new int[max];
+		marks = new int[max];
+		values = new int[max][];
+	}
+
+	@Override
+	public boolean hasNext(){
+		if(pending == null) pending = advance();
+		return pending != null;
+	}
+
+	@Override
+	public byte[] next(){
+		if(!hasNext()) throw new NoSuchElementException();
+		byte[] r = pending;
+		pending = null;
+		return r;
+	}
+
+	/**
+	 * Apre un nodo sull'istanza corrente.
+	 */
+	private void push(){
+		if(values[depth] == null) values[depth] = new int[s.getGeometry().getSize()];
+		cells[depth] = cfg.getStrategy().selectCell(s);
+		counts[depth] = cfg.getStrategy().orderValues(s, cells[depth], values[depth]);
+		next[depth] = 0;
+		marks[depth] = -1;
+		depth++;
+	}
+
+	/**
+	 * Prosegue la ricerca fino alla prossima soluzione.
+	 * @return La soluzione, null se non ce ne sono altre o se la ricerca e' stata cancellata, anche dal
+	 * limite di soluzioni.
+	 */
+	private byte[] advance(){
+		if(cfg.isCancelled()) return null;
+		if(!started){
+			started = true;
+			if(!cfg.getPropagator().propagate(s)) return null;
+			cfg.nodeVisited(0);
+			if(s.isComplete()) return found();
+			push();
+		}
+		while(depth > 0){
+			if(cfg.isCancelled()) return null;
+			int d = depth-1;
+			// annulla il tentativo precedente di questo nodo.
+			if(marks[d] >= 0){
+				s.rollback(marks[d]);
+				marks[d] = -1;
+			}
+			if(next[d] == counts[d]){
+				depth--;
+				continue;
+			}
+			marks[d] = s.checkpoint();
+			s.setVal(cells[d], values[d][next[d]++]);
+			if(s.hasContradiction() || !cfg.getPropagator().propagate(s)) continue;
+			cfg.nodeVisited(depth);
+			if(s.isComplete()) return found();
+			push();
+		}
+		return null;
+	}
+
+	/**
+	 * Conta la soluzione corrente con {@link SolverConfig#solutionFound(SudokuBoard)}, per il limite
+	 * e il listener.
+	 * @return La copia della soluzione.
+	 */
+	private byte[] found(){
+		byte[] r = Grids.snapshot(s);
+		cfg.solutionFound(s);
+		return r;
+	}
+}
@@ -0,0 +1,18 @@
+package psmc;
+
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Riceve le soluzioni trovate dalla ricerca, dai thread che le trovano: le implementazioni
+ * devono essere thread-safe.
+ *
+ * @author  Mattia Paolacci
+ */
+public interface SolutionListener {
+
+	/**
+	 * Chiamato per ogni soluzione trovata.
+	 * @param s istanza completa; e' valida solo durante la chiamata, perche' la ricerca continua a modificarla.
+	 */
+	void onSolution(SudokuBoard s);
+}
@@ -0,0 +1,199 @@
+package psmc;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import psmc.sudokupart.Grids;
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * {@link Flow.Publisher} delle soluzioni trovate dalla ricerca parallela di {@link SudokuSolver}.
+ * <p>
+ * I task mettono ogni soluzione in una coda limitata; un thread dedicato la consegna al subscriber
+ * solo quando questo ne ha fatto richiesta. Se il subscriber non chiede altre soluzioni la coda si
+ * riempie e i task che trovano una soluzione si fermano ad aspettare, quindi la domanda del subscriber
+ * regola la velocita' della ricerca. {@link Flow.Subscription#cancel()} termina la ricerca.
+ * <p>
+ * {@link Flow.Subscriber#onComplete()} e {@link Flow.Subscriber#onError(Throwable)} vengono chiamati anche
+ * senza domanda, come previsto da {@link Flow}. I task che aspettano il subscriber lo fanno con
+ * {@link ForkJoinPool#managedBlock}, quindi il pool puo' essere condiviso con altre ricerche.
+ * <p>
+ * La ricerca parte alla sottoscrizione ed e' una sola: il publisher accetta un solo subscriber.
+ *
+ * @author  Mattia Paolacci
+ */
+public class SolutionPublisher implements Flow.Publisher<byte[]> {
+
+	/**
+	 * Segna la fine della ricerca nella coda.
+	 */
+	private static final byte[] END = new byte[0];
+
+	private final SudokuBoard s;
+	private final SolverConfig cfg;
+	private final ForkJoinPool pool;
+	private final int buffer;
+	private final AtomicBoolean subscribed = new AtomicBoolean();
+
+	/**
+	 * @see Solutions#publisher(SudokuBoard, SolverConfig, ForkJoinPool, int)
+	 */
+	public SolutionPublisher(SudokuBoard s, SolverConfig cfg, ForkJoinPool pool, int buffer){
+		this.s = s;
+		this.cfg = cfg;
+		this.pool = pool;
+		this.buffer = buffer;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super byte[]> subscriber){
+		if(subscriber == null) throw new NullPointerException();
+		if(!subscribed.compareAndSet(false, true)){
+			subscriber.onSubscribe(new Flow.Subscription(){
+				public void request(long n){}
+				public void cancel(){}
+			});
+			subscriber.onError(new IllegalStateException("il publisher accetta un solo subscriber"));
+			return;
+		}
+		Thread t = new Thread(new Delivery(subscriber), "sudoku-solutions");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Sottoscrizione: consegna le soluzioni della coda secondo la domanda del subscriber. Coda, domanda,
+	 * errore e cancellazione sono protetti dal monitor di this, e ogni loro cambiamento sveglia chi aspetta.
+	 */
+	private final class Delivery implements Flow.Subscription, Runnable, SolutionListener {
+
+		private final Flow.Subscriber<? super byte[]> subscriber;
+		private final ArrayDeque<byte[]> queue = new ArrayDeque<byte[]>();
+
+		/**
+		 * Soluzioni richieste e non ancora consegnate.
+		 */
+		private long demand;
+		private boolean cancelled;
+		private Throwable error;
+
+		Delivery(Flow.Subscriber<? super byte[]> subscriber){
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public synchronized void request(long n){
+			if(n <= 0 && error == null){
+				error = new IllegalArgumentException("richiesta non positiva: "+n);
+				cfg.cancel();
+			}
+			demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+			notifyAll();
+		}
+
+		@Override
+		public synchronized void cancel(){
+			cancelled = true;
+			cfg.cancel();
+			queue.clear();
+			notifyAll();
+		}
+
+		@Override
+		public void onSolution(SudokuBoard b){
+			put(Grids.snapshot(b));
+		}
+
+		/**
+		 * Mette x in coda se c'e' posto o se e' la fine della ricerca, che non deve mai aspettare.
+		 * @return true se x e' in coda o se la sottoscrizione e' cancellata.
+		 */
+		private synchronized boolean offer(byte[] x){
+			if(cancelled) return true;
+			if(x != END && queue.size() >= buffer) return false;
+			queue.add(x);
+			notifyAll();
+			return true;
+		}
+
+		/**
+		 * Mette x in coda, aspettando se e' piena, a meno che la sottoscrizione non venga cancellata.
+		 * L'attesa passa da {@link ForkJoinPool#managedBlock}: mentre un thread del pool aspetta il subscriber,
+		 * il pool puo' attivarne un altro per il resto del lavoro.
+		 */
+		private void put(byte[] x){
+			try {
+				ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker(){
+					public boolean isReleasable(){ return offer(x); }
+					public boolean block() throws InterruptedException {
+						synchronized(Delivery.this){
+							while(!offer(x)) Delivery.this.wait();
+						}
+						return true;
+					}
+				});
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		@Override
+		public void run(){
+			subscriber.onSubscribe(this);
+			cfg.setListener(this);
+			pool.execute(ForkJoinTask.adapt(() -> {
+				try {
+					if(cfg.getPropagator().propagate(s))
+						new SudokuSolver(s, cfg, new SolutionCounter()).invoke();
+				} catch (Throwable t) {
+					synchronized(this){
+						if(error == null) error = t;
+						notifyAll();
+					}
+				} finally {
+					put(END);
+				}
+			}));
+			try {
+				while(true){
+					byte[] x;
+					Throwable e;
+					synchronized(this){
+						// la fine e gli errori si segnalano anche senza domanda.
+						while(!cancelled && error == null && (queue.isEmpty() || demand == 0 && queue.peek() != END)) wait();
+						if(cancelled) return;
+						e = error;
+						x = e == null ? queue.poll() : null;
+						if(x != null && x != END){
+							demand--;
+							// si e' liberato un posto per i task che aspettano.
+							notifyAll();
+						}
+					}
+					if(e != null){
+						cancel();
+						subscriber.onError(e);
+						return;
+					}
+					if(x == END){
+						subscriber.onComplete();
+						return;
+					}
+					try {
+						subscriber.onNext(x);
+					} catch (Throwable t) {
+						// per Flow un subscriber che lancia un'eccezione ha cancellato la sottoscrizione:
+						// la ricerca si ferma e i task in attesa vengono liberati.
+						cancel();
+						return;
+					}
+				}
+			} catch (InterruptedException e) {
+				cancel();
+			}
+		}
+	}
+}
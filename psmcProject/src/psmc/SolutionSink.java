@@ -0,0 +1,261 @@
+package psmc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+import psmc.io.BinaryFormat;
+import psmc.io.BinaryPuzzleReader;
+import psmc.sudokupart.Geometry;
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * {@link SolutionListener} che scrive le soluzioni in un file nel formato di {@link BinaryFormat},
+ * senza che i thread della ricerca aspettino il disco.
+ * <p>
+ * Ogni thread codifica le soluzioni che trova in un suo buffer diretto; un buffer pieno viene messo in
+ * una coda limitata e sostituito con uno libero. Un thread dedicato prende i buffer dalla coda, li
+ * comprime se richiesto e li scrive con il {@link FileChannel} in scritture sequenziali grandi quanto
+ * un buffer, poi li rimette tra quelli liberi. Un thread della ricerca si ferma solo quando la coda e'
+ * piena, cioe' quando lo scrittore e' indietro di piu' di <code>pending</code> buffer.
+ * <p>
+ * Il numero di soluzioni viene scritto nell'intestazione da {@link #close()}, da chiamare a ricerca
+ * terminata: i buffer non ancora pieni dei thread vengono scritti solo allora. Il file si legge con
+ * {@link BinaryPuzzleReader}.
+ *
+ * @author  Mattia Paolacci
+ */
+public class SolutionSink implements SolutionListener, Closeable {
+
+	/**
+	 * Segna la fine della scrittura nella coda.
+	 */
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	private final FileChannel channel;
+	private final BinaryFormat format;
+	private final int bufferBytes;
+	private final BlockingQueue<ByteBuffer> full;
+	private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<ByteBuffer>();
+	/**
+	 * Buffer di tutti i thread che hanno trovato soluzioni, per scriverne il resto alla chiusura.
+	 */
+	private final List<Local> locals = new ArrayList<Local>();
+	private final ThreadLocal<Local> local = ThreadLocal.withInitial(this::register);
+	private final Thread writer;
+
+	private final LongAdder solutions = new LongAdder();
+	private final LongAdder stalls = new LongAdder();
+	/**
+	 * Byte dei record e byte scritti nel file; aggiornati solo dallo scrittore.
+	 */
+	private volatile long rawBytes, written;
+	private volatile IOException error;
+	private final long start = System.nanoTime();
+	private long end;
+	private boolean closed;
+
+	/**
+	 * Buffer e array dei valori di un thread.
+	 */
+	private final class Local {
+		ByteBuffer buf = ByteBuffer.allocateDirect(bufferBytes);
+		final int[] grid = new int[format.getGeometry().getCells()];
+	}
+
+	/**
+	 * Crea il file, sostituendolo se esiste, e avvia lo scrittore.
+	 *
+	 * @param file file delle soluzioni.
+	 * @param g geometria del sudoku.
+	 * @param bufferBytes dimensione del buffer di ogni thread, arrotondata ad un numero intero di record.
+	 * @param pending buffer pieni in attesa di scrittura oltre i quali la ricerca si ferma.
+	 * @param compress true per comprimere ogni buffer con {@link Deflater}.
+	 * @throws IOException
+	 */
+	public SolutionSink(Path file, Geometry g, int bufferBytes, int pending, boolean compress) throws IOException {
+		if(pending < 1) throw new IllegalArgumentException("servono almeno un buffer in attesa");
+		format = new BinaryFormat(g, BinaryFormat.SOLUTIONS, compress);
+		this.bufferBytes = Math.max(1, bufferBytes / format.getRecordBytes()) * format.getRecordBytes();
+		full = new ArrayBlockingQueue<ByteBuffer>(pending + 1);
+		channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		ByteBuffer h = ByteBuffer.allocate(BinaryFormat.HEADER);
+		// il numero di soluzioni viene scritto alla chiusura.
+		format.writeHeader(h, 0);
+		h.flip();
+		while(h.hasRemaining()) channel.write(h);
+		writer = new Thread(this::write, "solution-sink");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	private Local register(){
+		Local l = new Local();
+		synchronized(locals){
+			locals.add(l);
+		}
+		return l;
+	}
+
+	@Override
+	public void onSolution(SudokuBoard s){
+		Local l = local.get();
+		for(int cell = 0; cell<l.grid.length; cell++) l.grid[cell] = s.getVal(cell);
+		format.encode(l.grid, l.buf);
+		solutions.increment();
+		if(l.buf.hasRemaining()) return;
+		l.buf.flip();
+		submit(l.buf);
+		ByteBuffer b = free.poll();
+		l.buf = b != null ? b : ByteBuffer.allocateDirect(bufferBytes);
+	}
+
+	/**
+	 * Mette un buffer pieno nella coda, aspettando se lo scrittore e' indietro.
+	 */
+	private void submit(ByteBuffer b){
+		if(full.offer(b)) return;
+		stalls.increment();
+		boolean interrupted = false;
+		while(true){
+			try {
+				full.put(b);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if(interrupted) Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Corpo dello scrittore. Dopo un errore continua a svuotare la coda, senza scrivere, cosi' che la
+	 * ricerca non resti ferma; l'errore viene lanciato da {@link #close()}.
+	 */
+	private void write(){
+		Deflater deflater = format.isCompressed() ? new Deflater(Deflater.BEST_SPEED) : null;
+		ByteBuffer out = deflater == null ? null : ByteBuffer.allocateDirect(bufferBytes + bufferBytes/8 + 64);
+		ByteBuffer blockHeader = ByteBuffer.allocate(8);
+		long raw = 0, bytes = 0;
+		try {
+			while(true){
+				ByteBuffer b = full.take();
+				if(b == END) break;
+				if(error == null){
+					try {
+						int n = b.remaining();
+						if(deflater == null) bytes += writeFully(b);
+						else {
+							deflater.reset();
+							deflater.setInput(b);
+							deflater.finish();
+							out.clear();
+							while(!deflater.finished()){
+								if(!out.hasRemaining()){
+									ByteBuffer bigger = ByteBuffer.allocateDirect(out.capacity() * 2);
+									out.flip();
+									out = bigger.put(out);
+								}
+								deflater.deflate(out);
+							}
+							out.flip();
+							blockHeader.clear();
+							blockHeader.putInt(n).putInt(out.remaining()).flip();
+							bytes += writeFully(blockHeader) + writeFully(out);
+						}
+						raw += n;
+						rawBytes = raw;
+						written = bytes;
+					} catch (IOException e) {
+						error = e;
+					}
+				}
+				b.clear();
+				free.offer(b);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if(deflater != null) deflater.end();
+		}
+	}
+
+	private int writeFully(ByteBuffer b) throws IOException {
+		int n = b.remaining();
+		while(b.hasRemaining()) channel.write(b);
+		return n;
+	}
+
+	/**
+	 * @return Il numero di soluzioni ricevute.
+	 */
+	public long getSolutions(){ return solutions.sum(); }
+
+	/**
+	 * @return I byte scritti nel file, intestazione esclusa.
+	 */
+	public long getBytesWritten(){ return written; }
+
+	/**
+	 * @return Quante volte un thread della ricerca ha dovuto aspettare lo scrittore.
+	 */
+	public long getStalls(){ return stalls.sum(); }
+
+	/**
+	 * Scrive i buffer ancora aperti, aspetta lo scrittore e scrive il numero di soluzioni nell'intestazione.
+	 * Va chiamato a ricerca terminata, quando nessun thread chiama piu' {@link #onSolution(SudokuBoard)}.
+	 *
+	 * @throws IOException se una scrittura e' fallita.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(closed) return;
+		closed = true;
+		try {
+			synchronized(locals){
+				for(Local l : locals){
+					if(l.buf.position() == 0) continue;
+					l.buf.flip();
+					submit(l.buf);
+				}
+			}
+			submit(END);
+			writer.join();
+			end = System.nanoTime();
+			if(error != null) throw error;
+			ByteBuffer h = ByteBuffer.allocate(BinaryFormat.HEADER);
+			format.writeHeader(h, solutions.sum());
+			h.flip();
+			while(h.hasRemaining()) channel.write(h, h.position());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("scrittura delle soluzioni interrotta");
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * @return Riepilogo su una riga: soluzioni, soluzioni al secondo, byte dei record e byte scritti,
+	 * attese della ricerca.
+	 */
+	@Override
+	public String toString(){
+		long n = solutions.sum();
+		long ms = ((closed ? end : System.nanoTime()) - start) / 1000000;
+		String s = "soluzioni "+n+", "+(ms == 0 ? n : n*1000/ms)+" al secondo, byte "+rawBytes;
+		if(format.isCompressed()) s += ", compressi "+written+String.format(" (%.1f%%)", rawBytes == 0 ? 0.0 : 100.0 * written / rawBytes);
+		return s+", attese dello scrittore "+stalls.sum();
+	}
+}
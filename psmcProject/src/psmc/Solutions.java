@@ -0,0 +1,56 @@
+package psmc;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import psmc.sudokupart.Grids;
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Enumerazione delle soluzioni, invece del solo conteggio. Ogni soluzione e' un array con
+ * un byte per blocco, come restituito da {@link Grids#snapshot(SudokuBoard)}, e viene prodotta
+ * quando la ricerca la trova: le soluzioni non vengono mai raccolte in memoria.
+ *
+ * @author  Mattia Paolacci
+ */
+public final class Solutions {
+
+	private Solutions(){}
+
+	/**
+	 * Iteratore pigro: la ricerca avanza solo quando si chiede la soluzione successiva.
+	 *
+	 * @param s istanza inizializzata con {@link SudokuBoard#findLegalValue()}; viene modificata
+	 * sul posto durante l'enumerazione.
+	 * @param cfg parametri della ricerca; la scelta tra copia e ricerca sul posto e' ignorata.
+	 * @return Le soluzioni di s.
+	 */
+	public static Iterator<byte[]> iterator(SudokuBoard s, SolverConfig cfg){
+		return new SolutionIterator(s, cfg);
+	}
+
+	/**
+	 * Come {@link #iterator(SudokuBoard, SolverConfig)}, ma come {@link Stream} sequenziale.
+	 */
+	public static Stream<byte[]> stream(SudokuBoard s, SolverConfig cfg){
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(s, cfg),
+				Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+	}
+
+	/**
+	 * Enumerazione parallela con {@link SudokuSolver}, vedi {@link SolutionPublisher}.
+	 *
+	 * @param s istanza inizializzata con {@link SudokuBoard#findLegalValue()}.
+	 * @param cfg parametri della ricerca, dedicati a questa enumerazione.
+	 * @param pool pool in cui eseguire la ricerca.
+	 * @param buffer numero massimo di soluzioni trovate ma non ancora consegnate.
+	 * @return Il publisher delle soluzioni di s.
+	 */
+	public static SolutionPublisher publisher(SudokuBoard s, SolverConfig cfg, ForkJoinPool pool, int buffer){
+		return new SolutionPublisher(s, cfg, pool, buffer);
+	}
+}
@@ -0,0 +1,265 @@
+package psmc;
+
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import psmc.branching.BranchingStrategy;
+import psmc.branching.DigitSymmetry;
+import psmc.branching.RowMajorStrategy;
+import psmc.sudokupart.Propagator;
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Parametri della ricerca, condivisi dall'algoritmo sequenziale e da {@link SudokuSolver},
+ * e contatori raccolti durante la ricerca.
+ *
+ * @author  Mattia Paolacci
+ */
+public class SolverConfig {
+
+	private boolean inPlace;
+	private BranchingStrategy strategy = new RowMajorStrategy();
+	/**
+	 * Strategia usata dalla ricerca: strategy, decorata con {@link DigitSymmetry} se richiesto.
+	 */
+	private BranchingStrategy searchStrategy = strategy;
+	private boolean digitSymmetry;
+	private GranularityPolicy granularity = GranularityPolicy.ALWAYS_FORK;
+	private Propagator propagator = Propagator.NAKED_SINGLES;
+	private SolutionListener listener;
+	private SolverMetrics metrics;
+	private SubtreeCache cache;
+
+	/**
+	 * Mescolato all'hash dei nodi con la riduzione per simmetria, i cui conteggi sono solo quelli
+	 * canonici: cosi' una cache condivisa non confonde i due conteggi.
+	 */
+	private static final long SYMMETRY_SALT = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * Se true la ricerca termina al piu' presto, lasciando il conteggio incompleto.
+	 */
+	private volatile boolean cancelled;
+
+	/**
+	 * Numero di soluzioni a cui fermare la ricerca, 0 per nessun limite.
+	 */
+	private long limit;
+	/**
+	 * Soluzioni trovate, contate solo se c'e' un limite.
+	 */
+	private final AtomicLong found = new AtomicLong();
+	private volatile boolean limitReached;
+
+	/**
+	 * Numero di nodi visitati nell'albero di ricerca.
+	 */
+	private final LongAdder nodes = new LongAdder();
+
+	/**
+	 * @param inPlace true per la ricerca sul posto con checkpoint, che copia l'istanza solo
+	 * quando un sotto-problema viene dato ad un nuovo task.
+	 * @return this
+	 */
+	public SolverConfig setInPlace(boolean inPlace){
+		this.inPlace = inPlace;
+		return this;
+	}
+
+	public boolean isInPlace(){ return inPlace; }
+
+	/**
+	 * @param strategy strategia di scelta del blocco su cui ramificare e dell'ordine dei valori.
+	 * @return this
+	 */
+	public SolverConfig setStrategy(BranchingStrategy strategy){
+		this.strategy = strategy;
+		searchStrategy = digitSymmetry ? new DigitSymmetry(strategy) : strategy;
+		return this;
+	}
+
+	/**
+	 * @return La strategia della ricerca, che con {@link #setDigitSymmetry(boolean)} prova solo le
+	 * soluzioni in forma canonica.
+	 */
+	public BranchingStrategy getStrategy(){ return searchStrategy; }
+
+	/**
+	 * @param digitSymmetry true per contare solo le soluzioni canoniche rispetto ai valori che non
+	 * compaiono nell'istanza, vedi {@link DigitSymmetry}; il conteggio esatto e' quello canonico per
+	 * {@link #symmetryFactor(SudokuBoard)}.
+	 * @return this
+	 */
+	public SolverConfig setDigitSymmetry(boolean digitSymmetry){
+		this.digitSymmetry = digitSymmetry;
+		return setStrategy(strategy);
+	}
+
+	public boolean isDigitSymmetry(){ return digitSymmetry; }
+
+	/**
+	 * @param s istanza da cui parte la ricerca, dopo la propagazione iniziale.
+	 * @return Il numero di soluzioni rappresentate da ogni soluzione contata: k! per k valori liberi
+	 * con la riduzione per simmetria, altrimenti 1.
+	 */
+	public BigInteger symmetryFactor(SudokuBoard s){
+		return digitSymmetry ? DigitSymmetry.factor(s) : BigInteger.ONE;
+	}
+
+	/**
+	 * @param granularity politica che decide quando {@link SudokuSolver} passa all'algoritmo sequenziale.
+	 * @return this
+	 */
+	public SolverConfig setGranularity(GranularityPolicy granularity){
+		this.granularity = granularity;
+		return this;
+	}
+
+	public GranularityPolicy getGranularity(){ return granularity; }
+
+	/**
+	 * @param propagator propagazione applicata dopo ogni assegnamento della ricerca.
+	 * @return this
+	 */
+	public SolverConfig setPropagator(Propagator propagator){
+		this.propagator = propagator;
+		return this;
+	}
+
+	public Propagator getPropagator(){ return propagator; }
+
+	/**
+	 * @param listener riceve ogni soluzione trovata, oltre al conteggio; null per nessuno.
+	 * @return this
+	 */
+	public SolverConfig setListener(SolutionListener listener){
+		this.listener = listener;
+		return this;
+	}
+
+	/**
+	 * @param metrics contatori dettagliati della ricerca, anche condivisi tra piu' ricerche; null per nessuno.
+	 * @return this
+	 */
+	public SolverConfig setMetrics(SolverMetrics metrics){
+		this.metrics = metrics;
+		return this;
+	}
+
+	public SolverMetrics getMetrics(){ return metrics; }
+
+	/**
+	 * @param cache cache dei conteggi dei sotto-alberi, anche condivisa tra piu' ricerche; null per nessuna.
+	 * @return this
+	 */
+	public SolverConfig setCache(SubtreeCache cache){
+		this.cache = cache;
+		return this;
+	}
+
+	/**
+	 * @return La cache dei sotto-alberi, null se non c'e' o se la ricerca deve visitare ogni soluzione:
+	 * con un limite o con un listener.
+	 */
+	public SubtreeCache getCache(){
+		return limit > 0 || listener != null ? null : cache;
+	}
+
+	/**
+	 * @param s nodo della ricerca.
+	 * @return La chiave del nodo nella {@link SubtreeCache}.
+	 */
+	long cacheKey(SudokuBoard s){
+		return digitSymmetry ? s.getHash() ^ SYMMETRY_SALT : s.getHash();
+	}
+
+	/**
+	 * Segnala una soluzione al listener, se presente, e la conta per il limite.
+	 */
+	void solutionFound(SudokuBoard s){
+		if(listener != null) listener.onSolution(s);
+		countSolution();
+	}
+
+	/**
+	 * Conta una soluzione per il limite, e cancella la ricerca se e' stato raggiunto. Chiamato ad ogni
+	 * soluzione, anche dalle ricerche esterne al package come {@link psmc.dlx.DancingLinks}.
+	 */
+	public void countSolution(){
+		if(metrics != null) metrics.solution();
+		if(limit > 0 && found.incrementAndGet() >= limit){
+			limitReached = true;
+			cancel();
+		}
+	}
+
+	/**
+	 * @param limit numero di soluzioni a cui fermare la ricerca, ad esempio 2 per sapere se la soluzione
+	 * e' unica; 0 per contarle tutte.
+	 * @return this
+	 */
+	public SolverConfig setLimit(long limit){
+		this.limit = limit;
+		return this;
+	}
+
+	public long getLimit(){ return limit; }
+
+	/**
+	 * @return true se la ricerca e' stata fermata dal limite.
+	 */
+	public boolean isLimitReached(){ return limitReached; }
+
+	/**
+	 * @param count soluzioni contate dalla ricerca.
+	 * @return Il conteggio, esatto se la ricerca non e' stata fermata dal limite.
+	 */
+	public CountResult result(BigInteger count){ return new CountResult(count, !limitReached); }
+
+	/**
+	 * Chiede a tutti i task della ricerca di terminare: ogni nodo non ancora visitato viene saltato.
+	 */
+	public void cancel(){ cancelled = true; }
+
+	public boolean isCancelled(){ return cancelled; }
+
+	/**
+	 * Segnala la visita di un nodo dell'albero di ricerca.
+	 * @param depth profondita' del nodo, 0 per la radice.
+	 */
+	void nodeVisited(int depth){
+		nodes.increment();
+		if(metrics != null) metrics.node(depth);
+	}
+
+	/**
+	 * Segnala l'esito di un ramo: l'assegnamento di un valore seguito dalla propagazione.
+	 * @param legal false se il ramo e' stato scartato.
+	 * @param placed blocchi riempiti dalla propagazione, oltre a quello assegnato.
+	 */
+	void branchTried(boolean legal, int placed){
+		if(metrics != null) metrics.branch(legal, placed);
+	}
+
+	/**
+	 * Segnala quanti figli di un nodo sono stati dati a nuovi task e quanti esplorati dal task corrente.
+	 */
+	void childrenScheduled(int forked, int inline){
+		if(metrics != null) metrics.children(forked, inline);
+	}
+
+	/**
+	 * Aggiunge n nodi visitati, per le ricerche che li contano da se', come {@link psmc.dlx.DancingLinks}.
+	 * @param n nodi visitati.
+	 */
+	public void addNodes(long n){
+		nodes.add(n);
+		if(metrics != null) metrics.addNodes(n);
+	}
+
+	/**
+	 * @return Il numero di nodi visitati finora.
+	 */
+	public long getNodes(){ return nodes.sum(); }
+}
@@ -0,0 +1,191 @@
+package psmc;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import psmc.io.PuzzleReader;
+
+/**
+ * Contatori della ricerca da osservare mentre e' in corso, pubblicati via JMX con {@link #register()}.
+ * <p>
+ * Ogni contatore e' un {@link LongAdder}: i thread del pool incrementano celle diverse, senza
+ * contendersi la stessa variabile, e la somma si calcola solo quando viene letta. I nodi sono contati
+ * per profondita', cosi' che il loro istogramma mostri dove si concentra la ricerca. Le frequenze al
+ * secondo sono calcolate sulla differenza tra due letture distanti almeno {@link #SAMPLE_NANOS}.
+ * <p>
+ * La copertura esatta ({@link psmc.dlx.DancingLinks}) aggiunge i suoi nodi solo al termine di ogni
+ * sotto-albero, senza profondita'; le soluzioni sono invece contate man mano.
+ *
+ * @author  Mattia Paolacci
+ */
+public class SolverMetrics implements SolverMetricsMXBean {
+
+	/**
+	 * Nome con cui i contatori vengono registrati.
+	 */
+	public static final String OBJECT_NAME = "psmc:type=SolverMetrics";
+
+	/**
+	 * Intervallo minimo tra due campioni delle frequenze, un secondo.
+	 */
+	static final long SAMPLE_NANOS = 1000000000L;
+
+	/**
+	 * Nodi visitati per profondita': la profondita' non supera il numero di blocchi.
+	 */
+	private final LongAdder[] depthNodes = new LongAdder[PuzzleReader.MAX_CELLS+1];
+
+	/**
+	 * Nodi senza profondita', aggiunti con {@link #addNodes(long)}.
+	 */
+	private final LongAdder otherNodes = new LongAdder();
+
+	private final LongAdder pruned = new LongAdder();
+	private final LongAdder singles = new LongAdder();
+	private final LongAdder forked = new LongAdder();
+	private final LongAdder inline = new LongAdder();
+	private final LongAdder solutions = new LongAdder();
+
+	private final long start = System.nanoTime();
+
+	/**
+	 * Ultimo campione: istante, nodi, soluzioni e le frequenze calcolate rispetto al precedente.
+	 */
+	private long sampleTime = start, sampleNodes, sampleSolutions;
+	private double nodeRate, solutionRate;
+
+	public SolverMetrics(){
+		for(int i = 0; i<depthNodes.length; i++) depthNodes[i] = new LongAdder();
+	}
+
+	/**
+	 * Registra i contatori nel server JMX della piattaforma con il nome {@link #OBJECT_NAME},
+	 * sostituendo quelli registrati in precedenza.
+	 * @return this
+	 * @throws IllegalStateException se la registrazione non riesce.
+	 */
+	public SolverMetrics register(){
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if(server.isRegistered(name)) server.unregisterMBean(name);
+			server.registerMBean(this, name);
+		} catch (JMException e) {
+			throw new IllegalStateException("registrazione JMX non riuscita: "+e.getMessage(), e);
+		}
+		return this;
+	}
+
+	/**
+	 * Conta un nodo visitato alla profondita' data.
+	 */
+	void node(int depth){ depthNodes[depth].increment(); }
+
+	/**
+	 * Aggiunge n nodi di cui non si conosce la profondita'.
+	 */
+	void addNodes(long n){ otherNodes.add(n); }
+
+	/**
+	 * Conta l'esito di un ramo.
+	 * @param legal false se il ramo e' stato scartato.
+	 * @param placed blocchi riempiti dalla propagazione dopo l'assegnamento del ramo.
+	 */
+	void branch(boolean legal, int placed){
+		if(!legal) pruned.increment();
+		if(placed > 0) singles.add(placed);
+	}
+
+	/**
+	 * Conta i figli di un nodo: quelli dati a nuovi task e quelli esplorati dal task corrente.
+	 */
+	void children(int forkedChildren, int inlineChildren){
+		if(forkedChildren > 0) forked.add(forkedChildren);
+		if(inlineChildren > 0) inline.add(inlineChildren);
+	}
+
+	void solution(){ solutions.increment(); }
+
+	@Override
+	public long getNodes(){
+		long n = otherNodes.sum();
+		for(LongAdder a : depthNodes) n += a.sum();
+		return n;
+	}
+
+	@Override
+	public long getPruned(){ return pruned.sum(); }
+
+	@Override
+	public long getSinglesPlaced(){ return singles.sum(); }
+
+	@Override
+	public long getTasksForked(){ return forked.sum(); }
+
+	@Override
+	public long getTasksInline(){ return inline.sum(); }
+
+	@Override
+	public long getSolutions(){ return solutions.sum(); }
+
+	@Override
+	public double getElapsedSeconds(){ return (System.nanoTime() - start) / 1e9; }
+
+	@Override
+	public double getNodesPerSecond(){
+		sample();
+		synchronized(this){ return nodeRate; }
+	}
+
+	@Override
+	public double getSolutionsPerSecond(){
+		sample();
+		synchronized(this){ return solutionRate; }
+	}
+
+	/**
+	 * Prende un nuovo campione se l'ultimo ha almeno {@link #SAMPLE_NANOS}; fino al primo campione
+	 * le frequenze sono la media dall'inizio.
+	 */
+	private synchronized void sample(){
+		long now = System.nanoTime();
+		long elapsed = now - sampleTime;
+		if(elapsed < SAMPLE_NANOS && sampleTime != start) return;
+		if(elapsed == 0) return;
+		long n = getNodes(), s = getSolutions();
+		nodeRate = (n - sampleNodes) * 1e9 / elapsed;
+		solutionRate = (s - sampleSolutions) * 1e9 / elapsed;
+		if(elapsed >= SAMPLE_NANOS){
+			sampleTime = now;
+			sampleNodes = n;
+			sampleSolutions = s;
+		}
+	}
+
+	@Override
+	public long[] getNodesPerDepth(){
+		long[] h = new long[depthNodes.length];
+		int max = 0;
+		for(int i = 0; i<h.length; i++){
+			h[i] = depthNodes[i].sum();
+			if(h[i] != 0) max = i+1;
+		}
+		long[] r = new long[max];
+		System.arraycopy(h, 0, r, 0, max);
+		return r;
+	}
+
+	/**
+	 * @return I contatori su una riga, per il riepilogo delle classi main.
+	 */
+	@Override
+	public String toString(){
+		return "rami potati "+getPruned()+", blocchi propagati "+getSinglesPlaced()
+				+", task con fork "+getTasksForked()+", figli senza fork "+getTasksInline()
+				+", profondita' massima "+Math.max(0, getNodesPerDepth().length-1);
+	}
+}
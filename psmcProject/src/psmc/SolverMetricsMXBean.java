@@ -0,0 +1,60 @@
+package psmc;
+
+/**
+ * Interfaccia JMX di {@link SolverMetrics}: i contatori della ricerca in corso, letti ad ogni
+ * richiesta, ad esempio da jconsole o VisualVM.
+ *
+ * @author  Mattia Paolacci
+ */
+public interface SolverMetricsMXBean {
+
+	/**
+	 * @return I nodi visitati finora.
+	 */
+	long getNodes();
+
+	/**
+	 * @return I rami scartati perche' illegali o resi illegali dalla propagazione.
+	 */
+	long getPruned();
+
+	/**
+	 * @return I blocchi riempiti dalla propagazione, oltre a quelli scelti dalla ricerca.
+	 */
+	long getSinglesPlaced();
+
+	/**
+	 * @return I figli dati ad un nuovo task con fork.
+	 */
+	long getTasksForked();
+
+	/**
+	 * @return I figli esplorati dal task che li ha creati, senza fork.
+	 */
+	long getTasksInline();
+
+	/**
+	 * @return Le soluzioni trovate finora.
+	 */
+	long getSolutions();
+
+	/**
+	 * @return I secondi trascorsi dalla creazione dei contatori.
+	 */
+	double getElapsedSeconds();
+
+	/**
+	 * @return I nodi al secondo nell'ultimo intervallo di campionamento.
+	 */
+	double getNodesPerSecond();
+
+	/**
+	 * @return Le soluzioni al secondo nell'ultimo intervallo di campionamento.
+	 */
+	double getSolutionsPerSecond();
+
+	/**
+	 * @return I nodi visitati ad ogni profondita' dell'albero di ricerca, fino alla piu' profonda raggiunta.
+	 */
+	long[] getNodesPerDepth();
+}
@@ -0,0 +1,173 @@
+package psmc;
+
+import java.math.BigInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache concorrente del numero di soluzioni dei sotto-alberi, indicizzata dall'hash di Zobrist dei
+ * valori dei blocchi ({@link psmc.sudokupart.SudokuBoard#getHash()}).
+ * <p>
+ * Il numero di soluzioni di un nodo dipende solo dai valori dei blocchi e non dal percorso con cui
+ * la ricerca ci e' arrivata: la propagazione toglie solo valori che nessuna soluzione usa, e strategia
+ * e ordine dei valori cambiano la forma dell'albero ma non il conteggio. Nella stessa ricerca uno
+ * stato non si ripete, perche' due rami differiscono sempre nel valore del blocco su cui si e'
+ * ramificato; la cache serve tra ricerche che la condividono, come i sudoku di {@link MainClassBatch}
+ * o le unita' di un {@link psmc.distributed.Worker}, dove sudoku diversi passano per gli stessi stati.
+ * <p>
+ * La tabella e' associativa a gruppi di {@link #WAYS} voci; ogni voce contiene l'hash completo, il
+ * conteggio e il numero di blocchi vuoti del nodo, che deve coincidere in lettura e rende ancora meno
+ * probabili le collisioni dell'hash a 64 bit. Un gruppo pieno espelle la voce con meno blocchi vuoti,
+ * ossia il sotto-albero meno costoso da ricontare. I gruppi sono protetti da un insieme di lock, ognuno
+ * condiviso da piu' gruppi, cosi' che thread diversi si blocchino solo se cercano nella stessa striscia.
+ * Vengono memorizzati solo i nodi con almeno <code>minEmpty</code> blocchi vuoti e conteggi che stanno
+ * in un <code>long</code>.
+ *
+ * @author  Mattia Paolacci
+ */
+public class SubtreeCache {
+
+	/**
+	 * Voci per gruppo.
+	 */
+	public static final int WAYS = 4;
+
+	/**
+	 * Byte occupati da una voce: hash, conteggio e blocchi vuoti.
+	 */
+	public static final int ENTRY_BYTES = 8 + 8 + 2;
+
+	private static final int MAX_STRIPES = 1 << 12;
+
+	private final long[] keys;
+	private final long[] counts;
+	/**
+	 * Blocchi vuoti del nodo di ogni voce, 0 per una voce libera.
+	 */
+	private final short[] empty;
+	private final Object[] locks;
+	private final int setMask;
+	private final int minEmpty;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder stores = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param bytes memoria massima della tabella; il numero di gruppi e' la potenza di 2 che ci sta.
+	 * @param minEmpty blocchi vuoti minimi di un nodo per essere memorizzato, almeno 1.
+	 */
+	public SubtreeCache(long bytes, int minEmpty){
+		if(minEmpty < 1) throw new IllegalArgumentException("minEmpty deve essere almeno 1");
+		long sets = Math.max(1, bytes / ((long) ENTRY_BYTES * WAYS));
+		sets = Long.highestOneBit(Math.min(sets, 1 << 26));
+		int n = (int) sets * WAYS;
+		keys = new long[n];
+		counts = new long[n];
+		empty = new short[n];
+		setMask = (int) sets - 1;
+		locks = new Object[(int) Math.min(sets, MAX_STRIPES)];
+		for(int i = 0; i<locks.length; i++) locks[i] = new Object();
+		this.minEmpty = minEmpty;
+	}
+
+	/**
+	 * @param emptyCount blocchi vuoti del nodo.
+	 * @return true se un nodo con emptyCount blocchi vuoti va cercato e memorizzato.
+	 */
+	public boolean accepts(int emptyCount){ return emptyCount >= minEmpty; }
+
+	/**
+	 * Cerca il conteggio di un nodo e, se presente, lo aggiunge a result.
+	 *
+	 * @param key hash del nodo.
+	 * @param emptyCount blocchi vuoti del nodo.
+	 * @param result contatore a cui aggiungere le soluzioni.
+	 * @return true se il nodo era presente.
+	 */
+	public boolean lookup(long key, int emptyCount, SolutionCounter.Cell result){
+		int set = (int) (key >>> 32) & setMask;
+		int base = set * WAYS;
+		long count = -1;
+		synchronized(locks[set & (locks.length-1)]){
+			for(int i = base; i<base+WAYS; i++){
+				if(keys[i] == key && empty[i] == emptyCount){
+					count = counts[i];
+					break;
+				}
+			}
+		}
+		if(count < 0){
+			misses.increment();
+			return false;
+		}
+		hits.increment();
+		result.add(count);
+		return true;
+	}
+
+	/**
+	 * Memorizza il conteggio di un nodo, espellendo se serve la voce del gruppo con meno blocchi vuoti.
+	 *
+	 * @param key hash del nodo.
+	 * @param emptyCount blocchi vuoti del nodo.
+	 * @param count soluzioni del sotto-albero; non viene memorizzato se non sta in un long.
+	 */
+	public void store(long key, int emptyCount, BigInteger count){
+		if(count.bitLength() > 63) return;
+		int set = (int) (key >>> 32) & setMask;
+		int base = set * WAYS;
+		boolean evicted = false;
+		synchronized(locks[set & (locks.length-1)]){
+			int victim = base;
+			for(int i = base; i<base+WAYS; i++){
+				if(empty[i] == 0 || (keys[i] == key && empty[i] == emptyCount)){
+					victim = i;
+					break;
+				}
+				if(empty[i] < empty[victim]) victim = i;
+				if(i == base+WAYS-1) evicted = true;
+			}
+			keys[victim] = key;
+			counts[victim] = count.longValue();
+			empty[victim] = (short) emptyCount;
+		}
+		stores.increment();
+		if(evicted) evictions.increment();
+	}
+
+	/**
+	 * @return Il numero di voci della tabella.
+	 */
+	public int getCapacity(){ return keys.length; }
+
+	/**
+	 * @return Le voci occupate. Letto senza lock, e' indicativo durante la ricerca.
+	 */
+	public int getOccupied(){
+		int n = 0;
+		for(int i = 0; i<empty.length; i++) if(empty[i] != 0) n++;
+		return n;
+	}
+
+	public long getHits(){ return hits.sum(); }
+
+	public long getMisses(){ return misses.sum(); }
+
+	public long getStores(){ return stores.sum(); }
+
+	public long getEvictions(){ return evictions.sum(); }
+
+	/**
+	 * @return Riepilogo su una riga: ricerche, successi, inserimenti, espulsioni e occupazione.
+	 */
+	@Override
+	public String toString(){
+		long h = getHits(), m = getMisses();
+		long lookups = h + m;
+		String rate = lookups == 0 ? "-" : String.format("%.1f%%", 100.0 * h / lookups);
+		return "ricerche "+lookups+", successi "+h+" ("+rate+"), inserimenti "+getStores()
+				+", espulsioni "+getEvictions()+", voci "+getOccupied()+"/"+getCapacity()
+				+" ("+((long) getCapacity() * ENTRY_BYTES >> 20)+" MB)";
+	}
+}
@@ -1,79 +1,190 @@
 package psmc;
 
-import java.util.Iterator;
-import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RecursiveAction;
 
-import psmc.sudokupart.Block;
-import psmc.sudokupart.SudokuInstance;
+import psmc.sudokupart.SudokuBoard;
 
 
 /**
  * Contiene l'algoritmo parallelo per la ricerca del numero di soluzioni legali
  * di un'istanza di sudoku.
+ * <p>
+ * Le soluzioni trovate non vengono restituite dai task ma accumulate nel contatore del thread
+ * che le trova, vedi {@link SolutionCounter}; il totale si legge a ricerca terminata.
  *
  * @author  Mattia Paolacci
  */
-public class SudokuSolver extends RecursiveTask<Integer>{
+public class SudokuSolver extends RecursiveAction{
 
-	private SudokuInstance s;
+	private SudokuBoard s;
 	private SudokuSolver[] ans;
 	
-	SudokuSolver(SudokuInstance s) { this.s = s; }
+	/**
+	 * Parametri della ricerca, condivisi da tutti i task.
+	 */
+	private final SolverConfig cfg;
+	
+	/**
+	 * Contatore delle soluzioni, condiviso dai task del sotto-albero: quello della ricerca, o quello di
+	 * un nodo da memorizzare nella {@link SubtreeCache}.
+	 */
+	private final SolutionCounter counter;
+	
+	/**
+	 * Profondita' del nodo nell'albero di ricerca, 0 per la radice.
+	 */
+	private final int depth;
+	
+	SudokuSolver(SudokuBoard s, SolverConfig cfg, SolutionCounter counter) { 
+		this(s, cfg, counter, 0);
+	}
+	
+	private SudokuSolver(SudokuBoard s, SolverConfig cfg, SolutionCounter counter, int depth) { 
+		this.s = s; 
+		this.cfg = cfg; 
+		this.counter = counter;
+		this.depth = depth;
+	}
 	
 	@Override
-	protected Integer compute(){
-		if(s.isComplete()) return 1;
+	protected void compute(){
+		solve(counter.local());
+	}
+	
+	/**
+	 * Esplora il sotto-albero di s. I figli esplorati da questo stesso thread usano lo stesso 
+	 * contatore, senza cercarlo di nuovo.
+	 * 
+	 * @param cell contatore del thread corrente.
+	 */
+	private void solve(SolutionCounter.Cell cell){
+		// sotto la soglia di granularita' il sotto-albero viene risolto senza creare task.
+		if(cfg.getGranularity().isSequential(s, depth)){
+			MainClassSequential.recursiveResolutor(s, cfg, cell, depth);
+			return;
+		}
+		if(cfg.isCancelled()) return;
+		cfg.nodeVisited(depth);
+		if(s.isComplete()){
+			cell.increment();
+			cfg.solutionFound(s);
+			return;
+		}
+		SubtreeCache cache = cfg.getCache();
+		if(cache == null || !cache.accepts(s.getEmptyCount())){
+			branch(counter, cell);
+			return;
+		}
+		// s puo' essere riusata da un figlio: chiave e blocchi vuoti vanno letti prima.
+		long key = cfg.cacheKey(s);
+		int empty = s.getEmptyCount();
+		if(cache.lookup(key, empty, cell)) return;
+		// i figli, anche quelli eseguiti da altri thread, contano su un contatore del solo sotto-albero,
+		// con un Cell per task invece di un ThreadLocal per nodo.
+		SolutionCounter sub = SolutionCounter.subtree();
+		branch(sub, sub.local());
+		MainClassSequential.store(cache, cfg, key, empty, sub.sum(), cell);
+	}
+	
+	/**
+	 * Crea i figli di s e li esplora, in questo task o in nuovi task.
+	 * 
+	 * @param into contatore da dare ai figli.
+	 * @param cell contatore di into per il thread corrente.
+	 */
+	private void branch(SolutionCounter into, SolutionCounter.Cell cell){
+		if(cfg.isInPlace()){
+			solveInPlace(into, cell);
+			return;
+		}
 		
-		// Prende il primo blocco libero nel sudoku
-		Block b = s.getFirstBlockEmpty();
-		int lDim = b.getDimSetLegalSol();
+		// Prende il blocco libero scelto dalla strategia
+		int b = cfg.getStrategy().selectCell(s);
+		int[] values = new int[s.getGeometry().getSize()];
+		int lDim = cfg.getStrategy().orderValues(s, b, values);
 		ans = new SudokuSolver[lDim];
 		
-		Iterator<Byte> ite = b.getIteratorSetLegal();
 		int i = 0;
-		while(ite.hasNext()){
-			int v = ite.next();
-			SudokuInstance sCopy = ite.hasNext() ? s.clona() : s;
-			sCopy.getBlock(b.getX(), b.getY()).setVal(v);
-			if(isLegalInstance(sCopy)){
-				ans[i] = new SudokuSolver(sCopy);
+		int empty = s.getEmptyCount();
+		for(int k = 0; k<lDim; k++){
+			SudokuBoard sCopy = k < lDim-1 ? s.clona() : s;
+			sCopy.setVal(b, values[k]);
+			boolean legal = isLegalInstance(sCopy) && cfg.getPropagator().propagate(sCopy);
+			cfg.branchTried(legal, empty - sCopy.getEmptyCount() - 1);
+			if(legal){
+				ans[i] = new SudokuSolver(sCopy, cfg, into, depth+1);
 				i++;
 			}
 		}
-		if(ans[0] == null) return 0; 
+		if(ans[0] == null) return; 
+		cfg.childrenScheduled(i-1, 1);
 		
 		i--;
 		while(i>0){
 			ans[i].fork();
 			i--;
 		}
-		int result = ans[0].compute();
+		ans[0].solve(cell);
 		ans[0] = null;
 		i++;
 		while(i<lDim && ans[i]!= null){
-			result += ans[i].join();
+			ans[i].join();
 			ans[i] = null;
 			i++;
 		}
-		return result;
-		
 	}
 	
 	/**
-	 * La legalità viene verificata controllando se ci sia un blocco con 0 soluzioni legali.
+	 * Ricerca sul posto: ogni valore legale viene provato su s e annullato con
+	 * {@link SudokuBoard#rollback(int)}. Solo i figli dati ad un nuovo task con fork vengono copiati;
+	 * l'ultimo valore viene esplorato da questo task, senza copia.
 	 * 
-	 * @param s Istanza di {@link SudokuInstance}, della quale bisogna verificare se sia legale 
-	 * @return {@link Boolean}, True se legale, false altrimenti.
+	 * @param into contatore da dare ai figli.
+	 * @param cell contatore di into per il thread corrente.
 	 */
-	protected boolean isLegalInstance(SudokuInstance s){
-		for(int i = 0; i<9; i++){
-			for(int j = 0; j<9; j++){
-				if(s.getBlock(j, i).isEmpty())
-					if(s.getBlock(j, i).getDimSetLegalSol() == 0)
-						return false;
+	private void solveInPlace(SolutionCounter into, SolutionCounter.Cell cell){
+		int b = cfg.getStrategy().selectCell(s);
+		int[] values = new int[s.getGeometry().getSize()];
+		int n = cfg.getStrategy().orderValues(s, b, values);
+		ans = new SudokuSolver[n];
+		int forked = 0;
+		int empty = s.getEmptyCount();
+		for(int k = 0; k<n; k++){
+			if(k == n-1){
+				// ultimo valore: nessun rollback, ci pensa chi ha creato il checkpoint.
+				s.setVal(b, values[k]);
+				boolean legal = isLegalInstance(s) && cfg.getPropagator().propagate(s);
+				cfg.branchTried(legal, empty - s.getEmptyCount() - 1);
+				cfg.childrenScheduled(forked, legal ? 1 : 0);
+				if(legal) new SudokuSolver(s, cfg, into, depth+1).solve(cell);
+				break;
 			}
+			int mark = s.checkpoint();
+			s.setVal(b, values[k]);
+			boolean legal = isLegalInstance(s) && cfg.getPropagator().propagate(s);
+			cfg.branchTried(legal, empty - s.getEmptyCount() - 1);
+			if(legal){
+				ans[forked] = new SudokuSolver(s.clona(), cfg, into, depth+1);
+				ans[forked++].fork();
+			}
+			s.rollback(mark);
+		}
+		while(forked>0){
+			forked--;
+			ans[forked].join();
+			ans[forked] = null;
 		}
-		return true;
+	}
+	
+	/**
+	 * La legalità viene verificata controllando se ci sia un blocco con 0 soluzioni legali.
+	 * L'istanza tiene aggiornato il flag ad ogni valore tolto, quindi il controllo è immediato.
+	 * 
+	 * @param s Istanza di {@link SudokuBoard}, della quale bisogna verificare se sia legale 
+	 * @return {@link Boolean}, True se legale, false altrimenti.
+	 */
+	protected boolean isLegalInstance(SudokuBoard s){
+		return !s.hasContradiction();
 	}
 
 }
@@ -0,0 +1,40 @@
+package psmc.branching;
+
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Strategia di ramificazione della ricerca: sceglie il blocco vuoto su cui ramificare e
+ * l'ordine in cui provarne i valori legali.
+ *
+ * @author  Mattia Paolacci
+ */
+public interface BranchingStrategy {
+
+	/**
+	 * Sceglie il blocco su cui ramificare. Assume che l'istanza sia legale, ossia che ogni
+	 * blocco vuoto abbia almeno un valore legale.
+	 *
+	 * @param s Istanza di {@link SudokuBoard}.
+	 * @return L'indice di un blocco vuoto, -1 se l'istanza e' completa.
+	 */
+	int selectCell(SudokuBoard s);
+
+	/**
+	 * Scrive in out i valori legali del blocco, nell'ordine in cui provarli. Di default
+	 * l'ordine e' crescente.
+	 *
+	 * @param s Istanza di {@link SudokuBoard}.
+	 * @param cell indice del blocco scelto con {@link #selectCell(SudokuBoard)}.
+	 * @param out array lungo almeno quanto il numero di valori possibili.
+	 * @return Il numero di valori scritti in out.
+	 */
+	default int orderValues(SudokuBoard s, int cell, int[] out){
+		int legal = s.getLegalMask(cell);
+		int n = 0;
+		while(legal != 0){
+			out[n++] = Integer.numberOfTrailingZeros(legal)+1;
+			legal &= legal-1;
+		}
+		return n;
+	}
+}
@@ -0,0 +1,63 @@
+package psmc.branching;
+
+import java.math.BigInteger;
+
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Riduzione per simmetria dei valori: i valori che non compaiono in nessun blocco sono
+ * intercambiabili, perche' scambiarli tra loro in una soluzione da' un'altra soluzione.
+ * <p>
+ * Se al nodo corrente k valori non compaiono, le loro etichette possono essere assegnate in k! modi
+ * e ognuno porta allo stesso numero di soluzioni. La strategia prova quindi, tra i valori non ancora
+ * comparsi, solo il primo dell'ordine dato dalla strategia decorata: la ricerca enumera le sole
+ * soluzioni in forma canonica, quelle in cui i valori liberi compaiono lungo la ricerca in quell'ordine.
+ * Ogni soluzione canonica rappresenta k! soluzioni, con k i valori liberi alla radice: il conteggio
+ * esatto si ottiene moltiplicando per {@link #factor(SudokuBoard)}.
+ * <p>
+ * La simmetria vale ad ogni nodo, e non solo alla radice, perche' i valori legali e la propagazione
+ * dipendono solo dai valori presenti. La scelta del blocco e' delegata ad un'altra strategia.
+ *
+ * @author  Mattia Paolacci
+ */
+public class DigitSymmetry implements BranchingStrategy {
+
+	private final BranchingStrategy strategy;
+
+	/**
+	 * @param strategy strategia che sceglie il blocco e ordina i valori.
+	 */
+	public DigitSymmetry(BranchingStrategy strategy){ this.strategy = strategy; }
+
+	@Override
+	public int selectCell(SudokuBoard s){ return strategy.selectCell(s); }
+
+	@Override
+	public int orderValues(SudokuBoard s, int cell, int[] out){
+		int n = strategy.orderValues(s, cell, out);
+		int used = s.getUsedValues();
+		boolean free = false;
+		int m = 0;
+		for(int i = 0; i<n; i++){
+			int v = out[i];
+			if((used & (1 << (v-1))) == 0){
+				// valore libero: solo il primo rappresenta gli altri.
+				if(free) continue;
+				free = true;
+			}
+			out[m++] = v;
+		}
+		return m;
+	}
+
+	/**
+	 * @param s istanza da cui parte la ricerca, dopo la propagazione iniziale.
+	 * @return k!, con k il numero di valori che non compaiono in s.
+	 */
+	public static BigInteger factor(SudokuBoard s){
+		int k = s.getGeometry().getSize() - Integer.bitCount(s.getUsedValues());
+		BigInteger f = BigInteger.ONE;
+		for(int i = 2; i<=k; i++) f = f.multiply(BigInteger.valueOf(i));
+		return f;
+	}
+}
@@ -0,0 +1,51 @@
+package psmc.branching;
+
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Ordina i valori del blocco scelto in base a quante volte compaiono negli insiemi dei valori
+ * legali dei blocchi vuoti: prima i valori piu' rari, che sono i piu' vincolati.
+ * La scelta del blocco e' delegata ad un'altra strategia.
+ * <p>
+ * Quando si contano tutte le soluzioni l'ordine dei valori non cambia il numero di nodi visitati,
+ * ma solo l'ordine in cui le soluzioni vengono trovate.
+ *
+ * @author  Mattia Paolacci
+ */
+public class FrequencyValueOrder implements BranchingStrategy {
+
+	private final BranchingStrategy cellSelection;
+
+	/**
+	 * @param cellSelection strategia usata per scegliere il blocco.
+	 */
+	public FrequencyValueOrder(BranchingStrategy cellSelection){ this.cellSelection = cellSelection; }
+
+	@Override
+	public int selectCell(SudokuBoard s){ return cellSelection.selectCell(s); }
+
+	@Override
+	public int orderValues(SudokuBoard s, int cell, int[] out){
+		int size = s.getGeometry().getSize();
+		int[] freq = new int[size+1];
+		for(int i = 0; i<s.getEmptyCount(); i++){
+			int legal = s.getLegalMask(s.getEmptyCell(i));
+			while(legal != 0){
+				freq[Integer.numberOfTrailingZeros(legal)+1]++;
+				legal &= legal-1;
+			}
+		}
+		int n = BranchingStrategy.super.orderValues(s, cell, out);
+		// insertion sort, al piu' size valori.
+		for(int i = 1; i<n; i++){
+			int v = out[i];
+			int j = i-1;
+			while(j >= 0 && freq[out[j]] > freq[v]){
+				out[j+1] = out[j];
+				j--;
+			}
+			out[j+1] = v;
+		}
+		return n;
+	}
+}
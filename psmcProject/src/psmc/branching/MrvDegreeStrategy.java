@@ -0,0 +1,45 @@
+package psmc.branching;
+
+import psmc.sudokupart.Geometry;
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Minimum remaining values con spareggio sul grado: tra i blocchi vuoti con meno valori
+ * legali sceglie quello con piu' blocchi vuoti nella stessa riga, colonna o regione, ossia
+ * quello il cui assegnamento vincola piu' blocchi.
+ *
+ * @author  Mattia Paolacci
+ */
+public class MrvDegreeStrategy implements BranchingStrategy {
+
+	@Override
+	public int selectCell(SudokuBoard s){
+		Geometry g = s.getGeometry();
+		int best = -1;
+		int bestDim = Integer.MAX_VALUE;
+		int bestDegree = -1;
+		for(int i = 0; i<s.getEmptyCount(); i++){
+			int cell = s.getEmptyCell(i);
+			int dim = s.getDimSetLegalSol(cell);
+			if(dim > bestDim) continue;
+			int degree = degree(s, g, cell);
+			if(dim < bestDim || degree > bestDegree){
+				best = cell;
+				bestDim = dim;
+				bestDegree = degree;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return Il numero di blocchi vuoti nella stessa riga, colonna o regione del blocco.
+	 */
+	private static int degree(SudokuBoard s, Geometry g, int cell){
+		int[] peers = g.getPeers(cell);
+		int degree = 0;
+		for(int i = 0; i<peers.length; i++)
+			if(s.getVal(peers[i]) == 0) degree++;
+		return degree;
+	}
+}
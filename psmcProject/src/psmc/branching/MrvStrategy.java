@@ -0,0 +1,29 @@
+package psmc.branching;
+
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Minimum remaining values: ramifica sul blocco vuoto con meno valori legali, cosi' che
+ * ogni nodo dell'albero di ricerca abbia il minor numero possibile di figli.
+ * Vengono esaminati solo i blocchi vuoti, tenuti aggiornati dall'istanza.
+ *
+ * @author  Mattia Paolacci
+ */
+public class MrvStrategy implements BranchingStrategy {
+
+	@Override
+	public int selectCell(SudokuBoard s){
+		int best = -1;
+		int bestDim = Integer.MAX_VALUE;
+		for(int i = 0; i<s.getEmptyCount(); i++){
+			int cell = s.getEmptyCell(i);
+			int dim = s.getDimSetLegalSol(cell);
+			if(dim < bestDim){
+				best = cell;
+				bestDim = dim;
+				if(dim <= 1) break;
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,45 @@
+package psmc.branching;
+
+import java.util.SplittableRandom;
+
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Prova i valori del blocco scelto in ordine casuale, cosi' che la prima soluzione trovata sia una
+ * soluzione a caso: serve a generare griglie complete, vedi {@link psmc.generator.PuzzleGenerator}.
+ * La scelta del blocco e' delegata ad un'altra strategia.
+ * <p>
+ * Il generatore non e' sincronizzato: ogni thread deve usare la sua istanza.
+ *
+ * @author  Mattia Paolacci
+ */
+public class RandomValueOrder implements BranchingStrategy {
+
+	private final BranchingStrategy cellSelection;
+	private final SplittableRandom random;
+
+	/**
+	 * @param cellSelection strategia usata per scegliere il blocco.
+	 * @param random generatore dell'ordine dei valori.
+	 */
+	public RandomValueOrder(BranchingStrategy cellSelection, SplittableRandom random){
+		this.cellSelection = cellSelection;
+		this.random = random;
+	}
+
+	@Override
+	public int selectCell(SudokuBoard s){ return cellSelection.selectCell(s); }
+
+	@Override
+	public int orderValues(SudokuBoard s, int cell, int[] out){
+		int n = BranchingStrategy.super.orderValues(s, cell, out);
+		// Fisher-Yates.
+		for(int i = n-1; i>0; i--){
+			int j = random.nextInt(i+1);
+			int v = out[i];
+			out[i] = out[j];
+			out[j] = v;
+		}
+		return n;
+	}
+}
@@ -0,0 +1,15 @@
+package psmc.branching;
+
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Ramifica sul primo blocco vuoto, scorrendo la matrice per righe a partire da (0,0).
+ * E' la strategia originale, basata su {@link SudokuBoard#getFirstEmptyCell()}.
+ *
+ * @author  Mattia Paolacci
+ */
+public class RowMajorStrategy implements BranchingStrategy {
+
+	@Override
+	public int selectCell(SudokuBoard s){ return s.getFirstEmptyCell(); }
+}
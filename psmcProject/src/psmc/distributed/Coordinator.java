@@ -0,0 +1,153 @@
+package psmc.distributed;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import psmc.Options;
+import psmc.sudokupart.Grids;
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Classe da chiamare per il conteggio distribuito su piu' processi, anche su macchine diverse che
+ * condividono la directory di lavoro.
+ * Uso: <code>java psmc.distributed.Coordinator [opzioni] file</code>.
+ * <p>
+ * Il coordinatore espande l'albero di ricerca fino alla frontiera con {@link Frontier}, scrive i nodi
+ * della frontiera a gruppi come unita' di una {@link WorkDirectory} e attende i risultati dei
+ * {@link Worker}. Le unita' il cui worker non aggiorna il battito da piu' di
+ * <code>--heartbeat-timeout</code> secondi vengono rimesse tra quelle libere. Il totale e' la somma
+ * esatta dei risultati e delle soluzioni trovate sopra la frontiera.
+ * <p>
+ * Se la directory contiene gia' la frontiera dello stesso sudoku, il coordinatore riparte da quella
+ * e conserva i risultati gia' scritti.
+ * Opzioni proprie:
+ * <ul>
+ * <li><code>--dir=directory</code> directory di lavoro, di default <code>psmc-work</code>.</li>
+ * <li><code>--frontier=D</code> profondita' della frontiera, di default 8.</li>
+ * <li><code>--unit-size=N</code> nodi della frontiera per unita', di default 64.</li>
+ * <li><code>--heartbeat-timeout=S</code> secondi senza battito dopo cui un'unita' viene riassegnata, di default 30.</li>
+ * <li><code>--spawn=N</code> avvia N worker sulla stessa macchina, con le stesse opzioni.</li>
+ * <li><code>--poll=MS</code> attesa tra due controlli dei risultati, di default 500 ms.</li>
+ * </ul>
+ * Le opzioni della ricerca (<code>--strategy</code>, <code>--propagation</code>) valgono per
+ * l'espansione; quelle date ai worker per il conteggio delle unita'.
+ *
+ * @author  Mattia Paolacci
+ */
+public class Coordinator {
+
+	public static void main(String args[]) throws IOException, InterruptedException
+	{
+		Options opt = Options.parse(args);
+		// con --symmetry la frontiera perderebbe i rami scartati per simmetria.
+		if(opt.has("limit") || opt.has("unique") || opt.has("solutions") || opt.has("symmetry"))
+			throw new IllegalArgumentException("il conteggio distribuito non supporta --limit, --unique, --solutions e --symmetry");
+		WorkDirectory dir = new WorkDirectory(Paths.get(opt.get("dir", "psmc-work")));
+		long timeout = opt.getInt("heartbeat-timeout", 30) * 1000L;
+		int poll = opt.getInt("poll", 500);
+
+		long start = System.nanoTime();
+		SudokuBoard s = opt.readBoard();
+		String puzzle = Grids.toLine(s);
+		Properties job = dir.readJob();
+		if(job == null) job = expand(s, puzzle, opt, dir);
+		else if(!job.getProperty("puzzle").equals(puzzle))
+			throw new IllegalArgumentException(dir.getPath()+": la directory contiene il lavoro di un altro sudoku");
+		else System.err.println("Riprendo il lavoro in "+dir.getPath());
+
+		int units = Integer.parseInt(job.getProperty("units"));
+		BigInteger total = new BigInteger(job.getProperty("solutions"));
+		long nodes = Long.parseLong(job.getProperty("nodes"));
+		System.out.println("Frontiera: profondita' "+job.getProperty("frontier")+", "+job.getProperty("grids")
+				+" sudoku in "+units+" unita'");
+
+		List<Process> workers = spawn(opt.getInt("spawn", 0), args, dir);
+
+		boolean[] done = new boolean[units];
+		int completed = 0, reported = -1;
+		while(true){
+			for(int id = 0; id<units; id++){
+				if(done[id]) continue;
+				BigInteger[] r = dir.readResult(id);
+				if(r == null) continue;
+				done[id] = true;
+				completed++;
+				total = total.add(r[0]);
+				nodes += r[1].longValue();
+			}
+			if(completed == units) break;
+			int reclaimed = dir.reclaimStale(timeout);
+			if(reclaimed > 0) System.err.println("Unita' riassegnate: "+reclaimed);
+			if(completed != reported){
+				System.err.println("Unita' completate: "+completed+"/"+units);
+				reported = completed;
+			}
+			Thread.sleep(poll);
+		}
+		dir.markDone();
+		for(Process p : workers) p.waitFor();
+		long time = (System.nanoTime() - start) / 1000000;
+
+		System.out.println("Nodi visitati: "+nodes);
+		System.out.println("Tempo: "+time+" ms");
+		System.out.println("Soluzioni Legali: "+total);
+	}
+
+	/**
+	 * Scrive le unita' della frontiera di s e poi il file del lavoro.
+	 * @return Il lavoro scritto.
+	 */
+	private static Properties expand(SudokuBoard s, String puzzle, Options opt, WorkDirectory dir) throws IOException {
+		int depth = opt.getInt("frontier", 8);
+		int unitSize = opt.getInt("unit-size", 64);
+		if(depth < 0 || unitSize < 1) throw new IllegalArgumentException("--frontier o --unit-size non validi");
+		s.findLegalValue();
+		s.findBlockWithOneLegalValue();
+		Frontier frontier = new Frontier(opt.solverConfig(), depth);
+		List<String> unit = new ArrayList<String>(unitSize);
+		int[] units = new int[1];
+		long[] grids = new long[1];
+		frontier.expand(s, grid -> {
+			unit.add(grid);
+			grids[0]++;
+			if(unit.size() == unitSize){
+				dir.writeUnit(units[0]++, unit);
+				unit.clear();
+			}
+		});
+		if(!unit.isEmpty()) dir.writeUnit(units[0]++, unit);
+
+		Properties job = new Properties();
+		job.setProperty("puzzle", puzzle);
+		job.setProperty("frontier", Integer.toString(depth));
+		job.setProperty("units", Integer.toString(units[0]));
+		job.setProperty("grids", Long.toString(grids[0]));
+		job.setProperty("solutions", frontier.getSolutions().value().toString());
+		job.setProperty("nodes", Long.toString(frontier.getNodes()));
+		dir.writeJob(job);
+		return job;
+	}
+
+	/**
+	 * Avvia n {@link Worker} con la stessa JVM e le stesse opzioni del coordinatore.
+	 */
+	private static List<Process> spawn(int n, String[] args, WorkDirectory dir) throws IOException {
+		List<Process> workers = new ArrayList<Process>();
+		if(n <= 0) return workers;
+		List<String> cmd = new ArrayList<String>();
+		cmd.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		cmd.add("-cp");
+		cmd.add(System.getProperty("java.class.path"));
+		cmd.add(Worker.class.getName());
+		for(String a : args) if(a.startsWith("--")) cmd.add(a);
+		cmd.add(dir.getPath().toString());
+		for(int i = 0; i<n; i++){
+			workers.add(new ProcessBuilder(cmd).inheritIO().start());
+		}
+		return workers;
+	}
+}
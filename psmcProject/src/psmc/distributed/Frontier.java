@@ -0,0 +1,86 @@
+package psmc.distributed;
+
+import java.io.IOException;
+
+import psmc.SolutionCounter;
+import psmc.SolverConfig;
+import psmc.sudokupart.Grids;
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Espande l'albero di ricerca fino ad una profondita' data, come fa la ricerca con copie, e
+ * consegna i nodi di quella profondita' (la frontiera) come sudoku parziali nel formato a una riga.
+ * <p>
+ * I nodi della frontiera sono disgiunti: ognuno differisce dai fratelli per il valore di almeno un
+ * blocco. Quindi le soluzioni del sudoku sono la somma delle soluzioni dei nodi della frontiera piu'
+ * quelle trovate sopra la frontiera. Un nodo puo' essere ricostruito dai soli valori dei blocchi,
+ * perche' la propagazione toglie solo valori che nessuna soluzione usa.
+ *
+ * @author  Mattia Paolacci
+ */
+public class Frontier {
+
+	/**
+	 * Riceve i nodi della frontiera.
+	 */
+	public interface Sink {
+		void accept(String grid) throws IOException;
+	}
+
+	private final SolverConfig cfg;
+	private final int depth;
+	private final SolutionCounter.Cell solutions = new SolutionCounter.Cell();
+	private long nodes;
+
+	/**
+	 * @param cfg strategia e propagazione usate per espandere l'albero.
+	 * @param depth profondita' della frontiera; 0 per consegnare il sudoku stesso.
+	 */
+	public Frontier(SolverConfig cfg, int depth){
+		this.cfg = cfg;
+		this.depth = depth;
+	}
+
+	/**
+	 * Espande s; s viene modificata.
+	 *
+	 * @param s istanza inizializzata con {@link SudokuBoard#findLegalValue()}.
+	 * @param sink riceve ogni nodo della frontiera.
+	 * @throws IOException se sink non riesce a consegnare un nodo.
+	 */
+	public void expand(SudokuBoard s, Sink sink) throws IOException {
+		if(s.hasContradiction() || !cfg.getPropagator().propagate(s)) return;
+		expand(s, sink, 0);
+	}
+
+	private void expand(SudokuBoard s, Sink sink, int d) throws IOException {
+		nodes++;
+		if(s.isComplete()){
+			solutions.increment();
+			return;
+		}
+		if(d == depth){
+			sink.accept(Grids.toLine(s));
+			return;
+		}
+		int b = cfg.getStrategy().selectCell(s);
+		int[] values = new int[s.getGeometry().getSize()];
+		int n = cfg.getStrategy().orderValues(s, b, values);
+		for(int i = 0; i<n; i++){
+			SudokuBoard sCopy = i < n-1 ? s.clona() : s;
+			sCopy.setVal(b, values[i]);
+			if(!sCopy.hasContradiction() && cfg.getPropagator().propagate(sCopy))
+				expand(sCopy, sink, d+1);
+		}
+	}
+
+	/**
+	 * @return Le soluzioni trovate sopra la frontiera.
+	 */
+	public SolutionCounter.Cell getSolutions(){ return solutions; }
+
+	/**
+	 * @return I nodi visitati sopra la frontiera, compresi quelli della frontiera.
+	 */
+	public long getNodes(){ return nodes; }
+}
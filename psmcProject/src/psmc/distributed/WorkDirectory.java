@@ -0,0 +1,230 @@
+package psmc.distributed;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Directory condivisa tra il {@link Coordinator} e i {@link Worker}, anche in JVM diverse:
+ * <pre>
+ * dir/job.properties         sudoku, profondita' della frontiera, numero di unita', soluzioni sopra la frontiera
+ * dir/units/00000042         unita' libera: un sudoku parziale per riga, nel formato a una riga
+ * dir/claimed/00000042.w     unita' presa dal worker w; la data di modifica e' il suo battito
+ * dir/results/00000042       soluzioni e nodi dell'unita'
+ * dir/done                   presente quando il conteggio e' terminato
+ * </pre>
+ * Ogni passaggio di stato e' una rinomina atomica: un'unita' viene presa spostandola da
+ * <code>units</code> a <code>claimed</code>, e tra piu' worker solo uno riesce; un risultato viene
+ * scritto in un file temporaneo e poi rinominato, cosi' che chi lo legge lo trovi sempre completo.
+ *
+ * @author  Mattia Paolacci
+ */
+public class WorkDirectory {
+
+	private final Path dir, units, claimed, results;
+
+	/**
+	 * @param dir directory di lavoro; le sottodirectory vengono create se mancano.
+	 * @throws IOException
+	 */
+	public WorkDirectory(Path dir) throws IOException {
+		this.dir = dir;
+		units = Files.createDirectories(dir.resolve("units"));
+		claimed = Files.createDirectories(dir.resolve("claimed"));
+		results = Files.createDirectories(dir.resolve("results"));
+	}
+
+	public Path getPath(){ return dir; }
+
+	/**
+	 * @param id numero dell'unita'.
+	 * @return Il nome del file dell'unita'.
+	 */
+	static String name(int id){ return String.format("%08d", id); }
+
+	/**
+	 * @return Il lavoro descritto in <code>job.properties</code>, null se non e' ancora stato scritto.
+	 * @throws IOException
+	 */
+	public Properties readJob() throws IOException {
+		Path f = dir.resolve("job.properties");
+		if(!Files.exists(f)) return null;
+		Properties p = new Properties();
+		try(Reader r = Files.newBufferedReader(f, StandardCharsets.UTF_8)){
+			p.load(r);
+		}
+		return p;
+	}
+
+	/**
+	 * Scrive <code>job.properties</code> con una rinomina atomica: va scritto dopo tutte le unita',
+	 * cosi' che la sua presenza indichi una frontiera completa.
+	 * @throws IOException
+	 */
+	public void writeJob(Properties p) throws IOException {
+		Path tmp = Files.createTempFile(dir, "job", ".tmp");
+		try(Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)){
+			p.store(w, "conteggio distribuito psmc");
+		}
+		Files.move(tmp, dir.resolve("job.properties"), StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Scrive un'unita' libera.
+	 * @param id numero dell'unita'.
+	 * @param grids sudoku parziali, nel formato a una riga.
+	 * @throws IOException
+	 */
+	public void writeUnit(int id, List<String> grids) throws IOException {
+		Path tmp = Files.createTempFile(dir, "unit", ".tmp");
+		Files.write(tmp, grids, StandardCharsets.US_ASCII);
+		Files.move(tmp, units.resolve(name(id)), StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Prende una qualsiasi unita' libera per il worker dato.
+	 * @param worker identificativo del worker, senza punti.
+	 * @return L'unita' presa, null se non ce ne sono di libere.
+	 * @throws IOException
+	 */
+	public Claim claim(String worker) throws IOException {
+		try(DirectoryStream<Path> ds = Files.newDirectoryStream(units)){
+			for(Path p : ds){
+				String unit = p.getFileName().toString();
+				Path target = claimed.resolve(unit+"."+worker);
+				try {
+					Files.move(p, target, StandardCopyOption.ATOMIC_MOVE);
+				} catch (NoSuchFileException e) {
+					continue;  // presa da un altro worker.
+				}
+				// la rinomina conserva la data del file: senza un battito l'unita' sembrerebbe abbandonata.
+				Claim c = new Claim(Integer.parseInt(unit), target);
+				if(c.heartbeat()) return c;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Unita' presa da un worker.
+	 */
+	public final class Claim {
+
+		private final int id;
+		private final Path file;
+
+		Claim(int id, Path file){
+			this.id = id;
+			this.file = file;
+		}
+
+		public int getId(){ return id; }
+
+		/**
+		 * @return I sudoku parziali dell'unita'.
+		 * @throws IOException
+		 */
+		public List<String> grids() throws IOException {
+			List<String> grids = new ArrayList<String>();
+			try(BufferedReader b = Files.newBufferedReader(file, StandardCharsets.US_ASCII)){
+				String line;
+				while((line = b.readLine()) != null) if(!line.isEmpty()) grids.add(line);
+			}
+			return grids;
+		}
+
+		/**
+		 * Aggiorna il battito dell'unita'.
+		 * @return false se l'unita' non e' piu' di questo worker, perche' il coordinatore l'ha riassegnata.
+		 */
+		public boolean heartbeat(){
+			try {
+				Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+				return true;
+			} catch (IOException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * Scrive il risultato e rilascia l'unita'.
+		 * @param count soluzioni dell'unita'.
+		 * @param nodes nodi visitati.
+		 * @throws IOException
+		 */
+		public void complete(BigInteger count, long nodes) throws IOException {
+			Path tmp = Files.createTempFile(dir, "result", ".tmp");
+			try(BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.US_ASCII)){
+				w.write(count+" "+nodes+"\n");
+			}
+			Files.move(tmp, results.resolve(name(id)), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * @param id numero dell'unita'.
+	 * @return Soluzioni e nodi dell'unita', null se non e' ancora terminata.
+	 * @throws IOException
+	 */
+	public BigInteger[] readResult(int id) throws IOException {
+		Path f = results.resolve(name(id));
+		if(!Files.exists(f)) return null;
+		String[] parts = new String(Files.readAllBytes(f), StandardCharsets.US_ASCII).trim().split(" ");
+		return new BigInteger[]{ new BigInteger(parts[0]), new BigInteger(parts[1]) };
+	}
+
+	/**
+	 * Rimette tra le unita' libere quelle il cui worker non da' segni di vita da piu' di timeoutMillis.
+	 * Un'unita' gia' terminata viene solo tolta da <code>claimed</code>.
+	 * @return Il numero di unita' riassegnate.
+	 * @throws IOException
+	 */
+	public int reclaimStale(long timeoutMillis) throws IOException {
+		long now = System.currentTimeMillis();
+		int n = 0;
+		try(DirectoryStream<Path> ds = Files.newDirectoryStream(claimed)){
+			for(Path p : ds){
+				String name = p.getFileName().toString();
+				String unit = name.substring(0, name.indexOf('.'));
+				try {
+					if(Files.exists(results.resolve(unit))){
+						Files.deleteIfExists(p);
+						continue;
+					}
+					if(now - Files.getLastModifiedTime(p).toMillis() < timeoutMillis) continue;
+					Files.move(p, units.resolve(unit), StandardCopyOption.ATOMIC_MOVE);
+					n++;
+				} catch (NoSuchFileException | FileAlreadyExistsException e) {
+					// il worker ha appena terminato l'unita', o e' gia' stata riassegnata.
+				}
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Segnala ai worker che il conteggio e' terminato.
+	 * @throws IOException
+	 */
+	public void markDone() throws IOException {
+		Path f = dir.resolve("done");
+		if(!Files.exists(f)) Files.createFile(f);
+	}
+
+	public boolean isDone(){ return Files.exists(dir.resolve("done")); }
+}
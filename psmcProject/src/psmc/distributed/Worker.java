@@ -0,0 +1,96 @@
+package psmc.distributed;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import psmc.MainClassParallel;
+import psmc.Options;
+import psmc.Scheduler;
+import psmc.SolverConfig;
+import psmc.dlx.DlxSolver;
+import psmc.sudokupart.Grids;
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Processo che conta le unita' di lavoro di una {@link WorkDirectory}, finche' il {@link Coordinator}
+ * non segnala la fine del conteggio.
+ * Uso: <code>java psmc.distributed.Worker [opzioni] directory</code>.
+ * <p>
+ * Ogni sudoku di un'unita' viene contato con il solutore parallelo ({@link psmc.SudokuSolver}, o la
+ * copertura esatta con <code>--backend=dlx</code>) nel pool scelto con le opzioni di {@link Options}.
+ * Mentre conta, il worker aggiorna il battito dell'unita' ogni terzo di <code>--heartbeat-timeout</code>;
+ * se scopre che l'unita' gli e' stata tolta interrompe il conteggio e non scrive il risultato.
+ * Opzioni proprie:
+ * <ul>
+ * <li><code>--poll=MS</code> attesa tra due ricerche di unita' libere, di default 500 ms.</li>
+ * <li><code>--heartbeat-timeout=S</code> secondi senza battito dopo cui il coordinatore riassegna
+ * un'unita', di default 30; deve essere lo stesso del coordinatore.</li>
+ * </ul>
+ *
+ * @author  Mattia Paolacci
+ */
+public class Worker {
+
+	public static void main(String args[]) throws IOException, InterruptedException
+	{
+		Options opt = Options.parse(args);
+		WorkDirectory dir = new WorkDirectory(Paths.get(opt.getArgument(0)));
+		int poll = opt.getInt("poll", 500);
+		long beat = Math.max(1, opt.getInt("heartbeat-timeout", 30) * 1000L / 3);
+		String id = "w"+ProcessHandle.current().pid();
+
+		ScheduledExecutorService heart = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "psmc-heartbeat");
+			t.setDaemon(true);
+			return t;
+		});
+		long units = 0;
+		try(Scheduler scheduler = opt.scheduler()){
+			while(!dir.isDone()){
+				WorkDirectory.Claim claim = dir.claim(id);
+				if(claim == null){
+					Thread.sleep(poll);
+					continue;
+				}
+				SolverConfig cfg = opt.solverConfig();
+				ScheduledFuture<?> beating = heart.scheduleAtFixedRate(() -> { if(!claim.heartbeat()) cfg.cancel(); },
+						beat, beat, TimeUnit.MILLISECONDS);
+				BigInteger count = count(claim, opt, cfg, scheduler.getPool());
+				beating.cancel(false);
+				if(cfg.isCancelled()){
+					System.err.println(id+": unita' "+claim.getId()+" riassegnata, risultato scartato");
+					continue;
+				}
+				claim.complete(count, cfg.getNodes());
+				units++;
+			}
+		} finally {
+			heart.shutdownNow();
+		}
+		System.err.println(id+": unita' contate "+units);
+		if(opt.cache() != null) System.err.println(id+": cache "+opt.cache());
+	}
+
+	/**
+	 * Conta le soluzioni di tutti i sudoku dell'unita'.
+	 */
+	private static BigInteger count(WorkDirectory.Claim claim, Options opt, SolverConfig cfg, ForkJoinPool pool)
+			throws IOException {
+		BigInteger total = BigInteger.ZERO;
+		for(String line : claim.grids()){
+			if(cfg.isCancelled()) break;
+			SudokuBoard s = opt.newBoard(Grids.parseLine(line));
+			s.findLegalValue();
+			s.findBlockWithOneLegalValue();
+			total = total.add(opt.isDlx() ? DlxSolver.count(s, cfg, pool, opt.getInt("dlx-split", 2))
+					: MainClassParallel.sudokuSolve(s, cfg, pool));
+		}
+		return total;
+	}
+}
@@ -0,0 +1,239 @@
+package psmc.dlx;
+
+import java.math.BigInteger;
+
+import psmc.SolutionCounter;
+import psmc.SolverConfig;
+import psmc.sudokupart.Geometry;
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Conteggio delle soluzioni come problema di copertura esatta, con l'algoritmo X di Knuth
+ * e i Dancing Links.
+ * <p>
+ * La matrice ha 4 colonne per blocco della griglia: blocco pieno, valore in riga, valore in colonna
+ * e valore in regione (324 per il sudoku 9x9). Ogni riga e' un valore legale di un blocco vuoto e
+ * copre 4 colonne; le colonne gia' coperte dai blocchi pieni non entrano nella matrice.
+ * I nodi non sono oggetti: sono indici in array paralleli di collegamenti (sinistra, destra, su,
+ * giu') e di colonna. L'indice 0 e' la radice, da 1 al numero di colonne le intestazioni.
+ * <p>
+ * Ad ogni passo la ricerca sceglie la colonna con meno righe.
+ *
+ * @author  Mattia Paolacci
+ */
+public class DancingLinks {
+
+	private final int[] left, right, up, down;
+	/**
+	 * Colonna di ogni nodo. Non cambia durante la ricerca, quindi e' condivisa tra le copie.
+	 */
+	private final int[] column;
+	/**
+	 * Numero di righe di ogni colonna, indicizzato per intestazione.
+	 */
+	private final int[] size;
+
+	/**
+	 * Nodi visitati dalla ricerca su questa matrice.
+	 */
+	private long nodes;
+
+	/**
+	 * Costruisce la matrice dai blocchi pieni e dai valori legali dei blocchi vuoti dell'istanza,
+	 * che deve essere inizializzata con {@link SudokuBoard#findLegalValue()}.
+	 *
+	 * @param s istanza di sudoku.
+	 */
+	public DancingLinks(SudokuBoard s){
+		Geometry g = s.getGeometry();
+		int cells = g.getCells();
+		int columns = 4*cells;
+		int rows = 0;
+		for(int cell = 0; cell<cells; cell++)
+			if(s.getVal(cell) == 0) rows += Integer.bitCount(s.getLegalMask(cell));
+		int total = columns + 1 + 4*rows;
+		left = new int[total];
+		right = new int[total];
+		up = new int[total];
+		down = new int[total];
+		column = new int[total];
+		size = new int[columns + 1];
+
+		boolean[] covered = new boolean[columns + 1];
+		int[] cols = new int[4];
+		for(int cell = 0; cell<cells; cell++){
+			int v = s.getVal(cell);
+			if(v == 0) continue;
+			columnsOf(g, cell, v, cols);
+			for(int k = 0; k<4; k++) covered[cols[k]] = true;
+		}
+		// intestazioni: solo le colonne non coperte entrano nella lista della radice.
+		int last = 0;
+		for(int c = 1; c<=columns; c++){
+			up[c] = down[c] = c;
+			column[c] = c;
+			if(covered[c]) continue;
+			left[c] = last;
+			right[last] = c;
+			last = c;
+		}
+		right[last] = 0;
+		left[0] = last;
+
+		int node = columns + 1;
+		for(int cell = 0; cell<cells; cell++){
+			if(s.getVal(cell) != 0) continue;
+			int mask = s.getLegalMask(cell);
+			while(mask != 0){
+				int v = Integer.numberOfTrailingZeros(mask)+1;
+				mask &= mask-1;
+				columnsOf(g, cell, v, cols);
+				for(int k = 0; k<4; k++){
+					int x = node + k;
+					int c = cols[k];
+					column[x] = c;
+					up[x] = up[c];
+					down[x] = c;
+					down[up[c]] = x;
+					up[c] = x;
+					size[c]++;
+					left[x] = node + (k+3)%4;
+					right[x] = node + (k+1)%4;
+				}
+				node += 4;
+			}
+		}
+	}
+
+	/**
+	 * Costruttore di copia, per dare un sotto-problema ad un altro task.
+	 * @param o matrice da copiare.
+	 */
+	DancingLinks(DancingLinks o){
+		left = o.left.clone();
+		right = o.right.clone();
+		up = o.up.clone();
+		down = o.down.clone();
+		column = o.column;
+		size = o.size.clone();
+	}
+
+	/**
+	 * Scrive in cols le intestazioni delle 4 colonne coperte dal valore v nel blocco cell.
+	 */
+	private static void columnsOf(Geometry g, int cell, int v, int[] cols){
+		int n = g.getSize(), cells = g.getCells();
+		int d = v-1;
+		cols[0] = 1 + cell;
+		cols[1] = 1 + cells + g.row(cell)*n + d;
+		cols[2] = 1 + 2*cells + g.col(cell)*n + d;
+		cols[3] = 1 + 3*cells + g.region(cell)*n + d;
+	}
+
+	private void cover(int c){
+		right[left[c]] = right[c];
+		left[right[c]] = left[c];
+		for(int i = down[c]; i != c; i = down[i]){
+			for(int j = right[i]; j != i; j = right[j]){
+				up[down[j]] = up[j];
+				down[up[j]] = down[j];
+				size[column[j]]--;
+			}
+		}
+	}
+
+	private void uncover(int c){
+		for(int i = up[c]; i != c; i = up[i]){
+			for(int j = left[i]; j != i; j = left[j]){
+				size[column[j]]++;
+				up[down[j]] = j;
+				down[up[j]] = j;
+			}
+		}
+		right[left[c]] = c;
+		left[right[c]] = c;
+	}
+
+	/**
+	 * @return La colonna con meno righe, 0 se tutte le colonne sono coperte.
+	 */
+	int chooseColumn(){
+		int best = 0;
+		int min = Integer.MAX_VALUE;
+		for(int c = right[0]; c != 0; c = right[c]){
+			if(size[c] < min){
+				min = size[c];
+				best = c;
+				if(min <= 1) break;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return Il numero di righe della colonna c.
+	 */
+	int size(int c){ return size[c]; }
+
+	/**
+	 * @return Il nodo sotto x nella sua colonna; da un'intestazione, la prima riga.
+	 */
+	int down(int x){ return down[x]; }
+
+	/**
+	 * Sceglie la riga del nodo r nella colonna c: copre c e le altre colonne della riga.
+	 * Usato per creare i sotto-problemi, su una copia della matrice.
+	 */
+	void select(int c, int r){
+		cover(c);
+		for(int j = right[r]; j != r; j = right[j]) cover(column[j]);
+	}
+
+	/**
+	 * Conta le coperture esatte della matrice, aggiungendole a result. Al termine la matrice
+	 * torna com'era.
+	 *
+	 * @param result contatore a cui aggiungere le soluzioni trovate.
+	 * @param cfg ogni soluzione viene contata per il suo limite; se la ricerca viene cancellata
+	 * termina senza visitare altri nodi.
+	 */
+	public void search(SolutionCounter.Cell result, SolverConfig cfg){
+		if(cfg.isCancelled()) return;
+		nodes++;
+		int c = chooseColumn();
+		if(c == 0){
+			result.increment();
+			cfg.countSolution();
+			return;
+		}
+		if(size[c] == 0) return;
+		cover(c);
+		for(int r = down[c]; r != c; r = down[r]){
+			for(int j = right[r]; j != r; j = right[j]) cover(column[j]);
+			search(result, cfg);
+			for(int j = left[r]; j != r; j = left[j]) uncover(column[j]);
+		}
+		uncover(c);
+	}
+
+	/**
+	 * @return I nodi visitati finora da {@link #search(SolutionCounter.Cell, SolverConfig)}.
+	 */
+	public long getNodes(){ return nodes; }
+
+	/**
+	 * Conta le soluzioni dell'istanza con la ricerca sequenziale.
+	 *
+	 * @param s istanza inizializzata con {@link SudokuBoard#findLegalValue()}.
+	 * @param cfg i nodi visitati vengono aggiunti ai suoi contatori.
+	 * @return Il numero esatto di soluzioni legali.
+	 */
+	public static BigInteger count(SudokuBoard s, SolverConfig cfg){
+		if(s.hasContradiction()) return BigInteger.ZERO;
+		DancingLinks dl = new DancingLinks(s);
+		SolutionCounter.Cell result = new SolutionCounter.Cell();
+		dl.search(result, cfg);
+		cfg.addNodes(dl.getNodes());
+		return result.value();
+	}
+}
@@ -0,0 +1,76 @@
+package psmc.dlx;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import psmc.SolutionCounter;
+import psmc.SolverConfig;
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Versione parallela di {@link DancingLinks}: i primi livelli della ricerca vengono divisi in task
+ * del {@link ForkJoinPool}, uno per riga della colonna scelta, ciascuno con la propria copia della
+ * matrice. Sotto la profondita' di divisione ogni task prosegue con la ricerca sequenziale.
+ *
+ * @author  Mattia Paolacci
+ */
+public class DlxSolver extends RecursiveAction {
+
+	private final DancingLinks dl;
+	private final SolverConfig cfg;
+	private final SolutionCounter counter;
+	private final int depth;
+	private final int split;
+
+	private DlxSolver(DancingLinks dl, SolverConfig cfg, SolutionCounter counter, int depth, int split){
+		this.dl = dl;
+		this.cfg = cfg;
+		this.counter = counter;
+		this.depth = depth;
+		this.split = split;
+	}
+
+	@Override
+	protected void compute(){
+		if(cfg.isCancelled()) return;
+		if(depth >= split){
+			dl.search(counter.local(), cfg);
+			cfg.addNodes(dl.getNodes());
+			return;
+		}
+		cfg.addNodes(1);
+		int c = dl.chooseColumn();
+		if(c == 0){
+			counter.local().increment();
+			cfg.countSolution();
+			return;
+		}
+		if(dl.size(c) == 0) return;
+		List<DlxSolver> tasks = new ArrayList<DlxSolver>(dl.size(c));
+		for(int r = dl.down(c); r != c; r = dl.down(r)){
+			DancingLinks child = new DancingLinks(dl);
+			child.select(c, r);
+			tasks.add(new DlxSolver(child, cfg, counter, depth+1, split));
+		}
+		invokeAll(tasks);
+	}
+
+	/**
+	 * Conta le soluzioni dell'istanza con la ricerca parallela.
+	 *
+	 * @param s istanza inizializzata con {@link SudokuBoard#findLegalValue()}.
+	 * @param cfg i nodi visitati vengono aggiunti ai suoi contatori.
+	 * @param pool pool in cui eseguire la ricerca.
+	 * @param split numero di livelli della ricerca divisi in task.
+	 * @return Il numero esatto di soluzioni legali.
+	 */
+	public static BigInteger count(SudokuBoard s, SolverConfig cfg, ForkJoinPool pool, int split){
+		if(s.hasContradiction()) return BigInteger.ZERO;
+		SolutionCounter counter = new SolutionCounter();
+		pool.invoke(new DlxSolver(new DancingLinks(s), cfg, counter, 0, split));
+		return counter.sum();
+	}
+}
@@ -0,0 +1,143 @@
+package psmc.generator;
+
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.SplittableRandom;
+
+import psmc.MainClassSequential;
+import psmc.SolverConfig;
+import psmc.Solutions;
+import psmc.branching.BranchingStrategy;
+import psmc.branching.MrvStrategy;
+import psmc.branching.RandomValueOrder;
+import psmc.dlx.DancingLinks;
+import psmc.sudokupart.Geometry;
+import psmc.sudokupart.MaskSudokuInstance;
+import psmc.sudokupart.Propagator;
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Genera sudoku con soluzione unica togliendo indizi da una griglia completa casuale.
+ * <p>
+ * La griglia e' la prima soluzione del sudoku vuoto, cercata con {@link Solutions#iterator} e i valori
+ * provati in ordine casuale da {@link RandomValueOrder}. Gli indizi vengono poi tolti in ordine casuale:
+ * un indizio resta se senza di esso il sudoku avrebbe un'altra soluzione. Per saperlo non serve contare
+ * le soluzioni: basta cercarne una con un valore diverso in quel blocco, fermando la ricerca alla prima
+ * (limite 1) con la ricerca sul posto, MRV e {@link Propagator#HIDDEN_SINGLES}, o con la copertura
+ * esatta. Un passaggio su tutti i blocchi da' un sudoku minimo: togliere altri indizi rende il sudoku
+ * meno vincolato, quindi un indizio necessario resta tale.
+ * <p>
+ * Un generatore non e' sincronizzato e non condivide stato: ogni thread deve usare il suo, con il suo
+ * generatore casuale.
+ *
+ * @author  Mattia Paolacci
+ */
+public class PuzzleGenerator {
+
+	private final Geometry g;
+	private final SplittableRandom random;
+	private final boolean dlx;
+	private final BranchingStrategy fill;
+	private final BranchingStrategy check = new MrvStrategy();
+	private final int[] values;
+
+	private long attempts, checks;
+
+	/**
+	 * @param g geometria dei sudoku.
+	 * @param random generatore casuale, usato solo da questo generatore.
+	 * @param dlx true per verificare l'unicita' con {@link DancingLinks}, false con il backtracking.
+	 */
+	public PuzzleGenerator(Geometry g, SplittableRandom random, boolean dlx){
+		this.g = g;
+		this.random = random;
+		this.dlx = dlx;
+		fill = new RandomValueOrder(new MrvStrategy(), random);
+		values = new int[g.getSize()];
+	}
+
+	/**
+	 * @return Una griglia completa casuale, indicizzata per y*N+x.
+	 */
+	public int[] solution(){
+		SudokuBoard s = new MaskSudokuInstance(new int[g.getCells()]);
+		s.findLegalValue();
+		SolverConfig cfg = new SolverConfig().setInPlace(true).setStrategy(fill).setPropagator(Propagator.HIDDEN_SINGLES);
+		Iterator<byte[]> it = Solutions.iterator(s, cfg);
+		byte[] b = it.next();
+		int[] grid = new int[b.length];
+		for(int cell = 0; cell<b.length; cell++) grid[cell] = b[cell];
+		return grid;
+	}
+
+	/**
+	 * Genera un sudoku con soluzione unica.
+	 *
+	 * @param target numero di indizi a cui fermarsi; 0 per togliere tutti quelli possibili, ottenendo un sudoku minimo.
+	 * @return I valori del sudoku, 0 per i blocchi vuoti; null se non si e' arrivati a target indizi.
+	 */
+	public int[] generate(int target){
+		attempts++;
+		int[] grid = solution();
+		int cells = grid.length;
+		int[] order = new int[cells];
+		for(int i = 0; i<cells; i++) order[i] = i;
+		for(int i = cells-1; i>0; i--){
+			int j = random.nextInt(i+1);
+			int c = order[i];
+			order[i] = order[j];
+			order[j] = c;
+		}
+		int clues = cells;
+		for(int i = 0; i<cells && clues > target; i++){
+			if(removable(grid, order[i])) clues--;
+		}
+		return clues <= target || target == 0 ? grid : null;
+	}
+
+	/**
+	 * Toglie l'indizio del blocco se il sudoku resta con una sola soluzione, altrimenti lo lascia.
+	 *
+	 * @return true se l'indizio e' stato tolto.
+	 */
+	private boolean removable(int[] grid, int cell){
+		int original = grid[cell];
+		grid[cell] = 0;
+		SudokuBoard s = new MaskSudokuInstance(grid);
+		s.findLegalValue();
+		int n = check.orderValues(s, cell, values);
+		for(int k = 0; k<n; k++){
+			if(values[k] == original) continue;
+			checks++;
+			int mark = s.checkpoint();
+			s.setVal(cell, values[k]);
+			boolean other = !s.hasContradiction() && hasSolution(s);
+			s.rollback(mark);
+			if(other){
+				grid[cell] = original;
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return true se s ha almeno una soluzione; la ricerca si ferma alla prima.
+	 */
+	private boolean hasSolution(SudokuBoard s){
+		SolverConfig cfg = new SolverConfig().setInPlace(true).setStrategy(check)
+				.setPropagator(Propagator.HIDDEN_SINGLES).setLimit(1);
+		BigInteger n = dlx ? DancingLinks.count(s, cfg) : MainClassSequential.recursiveResolutor(s, cfg);
+		return n.signum() > 0;
+	}
+
+	/**
+	 * @return Le griglie generate, comprese quelle che non sono arrivate al numero di indizi richiesto.
+	 */
+	public long getAttempts(){ return attempts; }
+
+	/**
+	 * @return Le ricerche fatte per verificare l'unicita'.
+	 */
+	public long getChecks(){ return checks; }
+}
@@ -0,0 +1,323 @@
+package psmc.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import psmc.sudokupart.Geometry;
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Formato binario compatto per raccolte di sudoku o di soluzioni, tutti della stessa dimensione.
+ * <pre>
+ * intestazione (16 byte)  MAGIC "PSMB", versione, tipo (0 sudoku, 1 soluzioni), lato della regione, flag,
+ *                         numero di record (long)
+ * record                  dimensione fissa, vedi {@link #getRecordBytes()}
+ * </pre>
+ * Tutti i numeri sono big-endian.
+ * <ul>
+ * <li>Un sudoku ha un valore per blocco in {@link #getCellBits()} bit (4 per il 9x9, 5 per 16x16 e
+ * 25x25, con 0 per il blocco vuoto): 41 byte per il 9x9 invece degli 82 del formato a una riga.</li>
+ * <li>Una soluzione ha solo i primi N-1 valori delle prime N-1 righe: l'ultima colonna e l'ultima riga
+ * sono il valore che manca nella riga o nella colonna. I valori sono cifre in base N, scritte a gruppi
+ * nel numero minimo di bit: 26 byte per il 9x9.</li>
+ * </ul>
+ * Un record non dipende dagli altri, quindi il record i sta alla posizione {@link #HEADER} + i *
+ * {@link #getRecordBytes()}.
+ * <p>
+ * Con il flag {@link #COMPRESSED} i record sono invece divisi in blocchi compressi con {@link java.util.zip.Deflater},
+ * ognuno preceduto dai byte dei suoi record e dalla dimensione compressa (due int); un blocco contiene
+ * sempre record interi, e i record si possono leggere solo in sequenza.
+ *
+ * @author  Mattia Paolacci
+ */
+public final class BinaryFormat {
+
+	public static final int MAGIC = 0x50534D42;  // "PSMB"
+	public static final int VERSION = 1;
+	public static final int HEADER = 16;
+
+	public static final byte PUZZLES = 0, SOLUTIONS = 1;
+
+	/**
+	 * Flag dell'intestazione: record in blocchi compressi.
+	 */
+	public static final int COMPRESSED = 1;
+
+	private final Geometry g;
+	private final byte kind;
+	private final boolean compressed;
+	private final int n;
+	private final int cellBits;
+	/**
+	 * Cifre per gruppo e bit di un gruppo completo, per le soluzioni.
+	 */
+	private final int groupDigits, groupBits;
+	private final int recordBytes;
+
+	/**
+	 * @param g geometria dei sudoku.
+	 * @param kind {@link #PUZZLES} o {@link #SOLUTIONS}.
+	 */
+	public BinaryFormat(Geometry g, byte kind){
+		this(g, kind, false);
+	}
+
+	/**
+	 * @param g geometria dei sudoku.
+	 * @param kind {@link #PUZZLES} o {@link #SOLUTIONS}.
+	 * @param compressed true se i record sono in blocchi compressi.
+	 */
+	public BinaryFormat(Geometry g, byte kind, boolean compressed){
+		if(kind != PUZZLES && kind != SOLUTIONS) throw new IllegalArgumentException("tipo di record sconosciuto: "+kind);
+		this.g = g;
+		this.kind = kind;
+		this.compressed = compressed;
+		n = g.getSize();
+		cellBits = bits(n);
+		int digits = (n-1)*(n-1);
+		// il gruppo che spreca meno bit, con un gruppo completo che sta in un long.
+		int bestDigits = 1, bestTotal = Integer.MAX_VALUE;
+		for(int k = 1; pow(n, k) <= Long.MAX_VALUE / n; k++){
+			int total = digits/k * bits(pow(n, k) - 1) + (digits%k == 0 ? 0 : bits(pow(n, digits%k) - 1));
+			if(total < bestTotal){
+				bestTotal = total;
+				bestDigits = k;
+			}
+		}
+		groupDigits = bestDigits;
+		groupBits = bits(pow(n, bestDigits) - 1);
+		int recordBits = kind == PUZZLES ? g.getCells()*cellBits : bestTotal;
+		recordBytes = (recordBits + 7) / 8;
+	}
+
+	private static long pow(int b, int e){
+		long r = 1;
+		for(int i = 0; i<e; i++) r *= b;
+		return r;
+	}
+
+	/**
+	 * @return I bit che servono per scrivere v.
+	 */
+	private static int bits(long v){ return 64 - Long.numberOfLeadingZeros(v); }
+
+	public Geometry getGeometry(){ return g; }
+
+	/**
+	 * @return true se i record sono soluzioni complete.
+	 */
+	public boolean isSolutions(){ return kind == SOLUTIONS; }
+
+	/**
+	 * @return true se i record sono in blocchi compressi.
+	 */
+	public boolean isCompressed(){ return compressed; }
+
+	/**
+	 * @return I byte di un record.
+	 */
+	public int getRecordBytes(){ return recordBytes; }
+
+	/**
+	 * @return I bit di un blocco nei record dei sudoku.
+	 */
+	public int getCellBits(){ return cellBits; }
+
+	/**
+	 * Scrive l'intestazione in out, dalla sua posizione corrente.
+	 * @param count numero di record.
+	 */
+	public void writeHeader(ByteBuffer out, long count){
+		out.putInt(MAGIC);
+		out.put((byte) VERSION);
+		out.put(kind);
+		out.put((byte) g.getBox());
+		out.put((byte) (compressed ? COMPRESSED : 0));
+		out.putLong(count);
+	}
+
+	/**
+	 * Legge l'intestazione da in, dalla sua posizione corrente.
+	 * @return Il formato dei record.
+	 * @throws IOException se l'intestazione non e' valida.
+	 */
+	public static BinaryFormat readHeader(ByteBuffer in) throws IOException {
+		if(in.remaining() < HEADER || in.getInt() != MAGIC) throw new IOException("non e' un file di sudoku binario");
+		int version = in.get();
+		if(version != VERSION) throw new IOException("versione del formato binario non supportata: "+version);
+		byte kind = in.get();
+		int box = in.get();
+		int flags = in.get();
+		in.getLong();
+		if(box < Geometry.MIN_BOX || box > Geometry.MAX_BOX) throw new IOException("lato di regione non valido: "+box);
+		if(kind != PUZZLES && kind != SOLUTIONS) throw new IOException("tipo di record non valido: "+kind);
+		if((flags & ~COMPRESSED) != 0) throw new IOException("flag del formato binario non supportati: "+flags);
+		return new BinaryFormat(Geometry.ofBox(box), kind, (flags & COMPRESSED) != 0);
+	}
+
+	/**
+	 * Scrive un record con i valori di grid in out.
+	 *
+	 * @param grid valori dei blocchi, indicizzati per y*N+x, 0 se vuoto.
+	 * @param out buffer con almeno {@link #getRecordBytes()} byte liberi.
+	 * @throws IllegalArgumentException se grid ha un valore fuori dal sudoku, o se il record e' una soluzione
+	 * e grid non lo e'; in questo caso out non viene modificato.
+	 */
+	public void encode(int[] grid, ByteBuffer out){
+		if(grid.length != g.getCells()) throw new IllegalArgumentException("attesi "+g.getCells()+" blocchi, trovati "+grid.length);
+		// il record va controllato tutto prima di scriverne un bit: un record parziale sposterebbe i successivi.
+		if(kind == PUZZLES) checkPuzzle(grid);
+		else checkSolution(grid);
+		Bits w = new Bits(out);
+		if(kind == PUZZLES){
+			for(int cell = 0; cell<grid.length; cell++) w.put(grid[cell], cellBits);
+		}
+		else {
+			long group = 0;
+			int k = 0;
+			for(int r = 0; r<n-1; r++){
+				for(int c = 0; c<n-1; c++){
+					group = group*n + grid[r*n + c] - 1;
+					if(++k == groupDigits){
+						w.put(group, groupBits);
+						group = 0;
+						k = 0;
+					}
+				}
+			}
+			if(k > 0) w.put(group, bits(pow(n, k) - 1));
+		}
+		w.flush();
+	}
+
+	/**
+	 * Scrive un record con i valori dell'istanza s in out.
+	 * @see #encode(int[], ByteBuffer)
+	 */
+	public void encode(SudokuBoard s, ByteBuffer out){
+		int[] grid = new int[g.getCells()];
+		for(int cell = 0; cell<grid.length; cell++) grid[cell] = s.getVal(cell);
+		encode(grid, out);
+	}
+
+	/**
+	 * Controlla che ogni valore sia nella dimensione del sudoku.
+	 */
+	private void checkPuzzle(int[] grid){
+		for(int cell = 0; cell<grid.length; cell++){
+			if(grid[cell] < 0 || grid[cell] > n) throw new IllegalArgumentException("valore "+grid[cell]+" fuori dal sudoku "+n+"x"+n);
+		}
+	}
+
+	/**
+	 * Controlla che ogni riga e ogni colonna contenga tutti i valori, come serve per ricostruire l'ultima
+	 * riga e l'ultima colonna.
+	 */
+	private void checkSolution(int[] grid){
+		int all = g.getAll();
+		for(int i = 0; i<n; i++){
+			int row = 0, col = 0;
+			for(int j = 0; j<n; j++){
+				int rv = grid[i*n + j], cv = grid[j*n + i];
+				if(rv < 1 || rv > n || cv < 1 || cv > n) throw new IllegalArgumentException("la soluzione non e' completa");
+				row |= 1 << (rv-1);
+				col |= 1 << (cv-1);
+			}
+			if(row != all || col != all) throw new IllegalArgumentException("la soluzione ha valori ripetuti");
+		}
+	}
+
+	/**
+	 * Legge un record da in e ne scrive i valori in grid.
+	 *
+	 * @param in buffer con almeno {@link #getRecordBytes()} byte da leggere.
+	 * @param grid array di almeno {@link Geometry#getCells()} elementi.
+	 */
+	public void decode(ByteBuffer in, int[] grid){
+		Bits r = new Bits(in);
+		int cells = g.getCells();
+		if(kind == PUZZLES){
+			for(int cell = 0; cell<cells; cell++) grid[cell] = (int) r.get(cellBits);
+		}
+		else {
+			int digits = (n-1)*(n-1);
+			long[] groups = new long[(digits + groupDigits - 1) / groupDigits];
+			for(int i = 0; i<groups.length; i++){
+				int k = Math.min(groupDigits, digits - i*groupDigits);
+				groups[i] = r.get(k == groupDigits ? groupBits : bits(pow(n, k) - 1));
+			}
+			// le cifre di un gruppo sono state scritte dalla piu' significativa.
+			for(int i = groups.length-1; i>=0; i--){
+				int k = Math.min(groupDigits, digits - i*groupDigits);
+				long v = groups[i];
+				for(int j = k-1; j>=0; j--){
+					int d = i*groupDigits + j;
+					grid[(d/(n-1))*n + d%(n-1)] = (int) (v % n) + 1;
+					v /= n;
+				}
+			}
+			int all = g.getAll();
+			int[] colUsed = new int[n];
+			for(int row = 0; row<n-1; row++){
+				int used = 0;
+				for(int c = 0; c<n-1; c++){
+					int bit = 1 << (grid[row*n + c]-1);
+					used |= bit;
+					colUsed[c] |= bit;
+				}
+				grid[row*n + n-1] = Integer.numberOfTrailingZeros(all & ~used) + 1;
+				colUsed[n-1] |= 1 << (grid[row*n + n-1]-1);
+			}
+			for(int c = 0; c<n; c++) grid[(n-1)*n + c] = Integer.numberOfTrailingZeros(all & ~colUsed[c]) + 1;
+		}
+	}
+
+	/**
+	 * Scrittura e lettura di bit in un record, dal piu' significativo. Un record termina sempre ad
+	 * un byte intero: i bit che avanzano nell'ultimo byte sono zero e vengono ignorati in lettura.
+	 */
+	private static final class Bits {
+
+		private final ByteBuffer buf;
+		private long acc;
+		private int count;
+
+		Bits(ByteBuffer buf){ this.buf = buf; }
+
+		void put(long v, int bits){
+			if(bits > 32){
+				put(v >>> 32, bits-32);
+				put(v & 0xFFFFFFFFL, 32);
+				return;
+			}
+			acc = acc << bits | v;
+			count += bits;
+			while(count >= 8){
+				buf.put((byte) (acc >>> (count-8)));
+				count -= 8;
+			}
+			acc &= (1L << count) - 1;
+		}
+
+		long get(int bits){
+			if(bits > 32) return get(bits-32) << 32 | get(32);
+			while(count < bits){
+				acc = acc << 8 | (buf.get() & 0xFF);
+				count += 8;
+			}
+			count -= bits;
+			long v = acc >>> count;
+			acc &= (1L << count) - 1;
+			return v;
+		}
+
+		/**
+		 * Scrive l'ultimo byte, completato con zeri.
+		 */
+		void flush(){
+			if(count > 0) buf.put((byte) (acc << (8-count)));
+			count = 0;
+			acc = 0;
+		}
+	}
+}
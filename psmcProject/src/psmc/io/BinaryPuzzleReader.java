@@ -0,0 +1,153 @@
+package psmc.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import psmc.sudokupart.Geometry;
+
+/**
+ * Lettore di file nel formato di {@link BinaryFormat}. I record vengono letti dal {@link FileChannel}
+ * a blocchi in un buffer diretto e decodificati direttamente nei valori dei blocchi. Un file compresso
+ * viene decompresso un blocco alla volta nello stesso buffer.
+ *
+ * @author  Mattia Paolacci
+ */
+public class BinaryPuzzleReader implements PuzzleSource {
+
+	/**
+	 * Dimensione di default del buffer di lettura.
+	 */
+	public static final int DEFAULT_BUFFER = 1 << 20;
+
+	private final FileChannel channel;
+	private final BinaryFormat format;
+	private final long count;
+	private ByteBuffer buf;
+	/**
+	 * Decompressore dei blocchi, null se il file non e' compresso.
+	 */
+	private final Inflater inflater;
+	private long read;
+
+	/**
+	 * @param file file da leggere.
+	 * @throws IOException se il file non e' nel formato binario o e' troncato.
+	 */
+	public BinaryPuzzleReader(Path file) throws IOException {
+		this(file, DEFAULT_BUFFER);
+	}
+
+	/**
+	 * @param file file da leggere.
+	 * @param bufferBytes dimensione del buffer di lettura.
+	 * @throws IOException se il file non e' nel formato binario o e' troncato.
+	 */
+	public BinaryPuzzleReader(Path file, int bufferBytes) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			ByteBuffer h = ByteBuffer.allocate(BinaryFormat.HEADER);
+			while(h.hasRemaining() && channel.read(h) >= 0);
+			h.flip();
+			format = BinaryFormat.readHeader(h);
+			count = h.getLong(8);
+			long expected = BinaryFormat.HEADER + count * format.getRecordBytes();
+			if(count < 0 || !format.isCompressed() && channel.size() != expected)
+				throw new IOException(file+": attesi "+expected+" byte per "+count+" record, trovati "+channel.size());
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		int records = Math.max(1, bufferBytes / format.getRecordBytes());
+		buf = ByteBuffer.allocateDirect(records * format.getRecordBytes());
+		buf.flip();
+		inflater = format.isCompressed() ? new Inflater() : null;
+	}
+
+	/**
+	 * @param file file da controllare.
+	 * @return true se il file inizia con {@link BinaryFormat#MAGIC}.
+	 * @throws IOException
+	 */
+	public static boolean isBinary(Path file) throws IOException {
+		if(Files.size(file) < BinaryFormat.HEADER) return false;
+		try(FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)){
+			ByteBuffer b = ByteBuffer.allocate(4);
+			while(b.hasRemaining() && ch.read(b) >= 0);
+			return b.getInt(0) == BinaryFormat.MAGIC;
+		}
+	}
+
+	public BinaryFormat getFormat(){ return format; }
+
+	public Geometry getGeometry(){ return format.getGeometry(); }
+
+	/**
+	 * @return Il numero di record del file.
+	 */
+	public long getCount(){ return count; }
+
+	/**
+	 * Legge il prossimo record.
+	 *
+	 * @throws MalformedPuzzleException se un sudoku ha un valore fuori dalla sua dimensione.
+	 */
+	@Override
+	public int next(int[] grid) throws IOException {
+		if(read == count) return 0;
+		if(!buf.hasRemaining()){
+			if(inflater != null) inflate();
+			else {
+				buf.clear();
+				while(buf.hasRemaining() && channel.read(buf) >= 0);
+				buf.flip();
+			}
+		}
+		long offset = BinaryFormat.HEADER + read * format.getRecordBytes();
+		read++;
+		format.decode(buf, grid);
+		int cells = format.getGeometry().getCells(), n = format.getGeometry().getSize();
+		for(int cell = 0; cell<cells; cell++){
+			if(grid[cell] > n) throw new MalformedPuzzleException(offset, "valore "+grid[cell]+" fuori dal sudoku "+n+"x"+n);
+		}
+		return cells;
+	}
+
+	/**
+	 * Legge il prossimo blocco compresso e lo decomprime nel buffer.
+	 */
+	private void inflate() throws IOException {
+		ByteBuffer h = ByteBuffer.allocate(8);
+		while(h.hasRemaining() && channel.read(h) >= 0);
+		if(h.hasRemaining()) throw new IOException("file compresso troncato dopo "+read+" record");
+		int raw = h.getInt(0), size = h.getInt(4);
+		if(raw <= 0 || raw % format.getRecordBytes() != 0 || size <= 0)
+			throw new IOException("blocco compresso non valido dopo "+read+" record");
+		ByteBuffer in = ByteBuffer.allocate(size);
+		while(in.hasRemaining() && channel.read(in) >= 0);
+		if(in.hasRemaining()) throw new IOException("file compresso troncato dopo "+read+" record");
+		in.flip();
+		if(buf.capacity() < raw) buf = ByteBuffer.allocateDirect(raw);
+		buf.clear().limit(raw);
+		inflater.reset();
+		inflater.setInput(in);
+		try {
+			while(buf.hasRemaining() && !inflater.finished() && !inflater.needsInput()) inflater.inflate(buf);
+		} catch (DataFormatException e) {
+			throw new IOException("blocco compresso non valido dopo "+read+" record: "+e.getMessage());
+		}
+		if(buf.hasRemaining()) throw new IOException("blocco compresso non valido dopo "+read+" record");
+		buf.flip();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(inflater != null) inflater.end();
+		channel.close();
+	}
+}
@@ -0,0 +1,92 @@
+package psmc.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import psmc.sudokupart.Geometry;
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Scrive sudoku o soluzioni nel formato di {@link BinaryFormat}. I record vengono codificati in un
+ * buffer diretto e scritti con il {@link FileChannel} quando il buffer e' pieno; alla chiusura viene
+ * scritto il numero di record nell'intestazione.
+ *
+ * @author  Mattia Paolacci
+ */
+public class BinaryPuzzleWriter implements Closeable {
+
+	private final FileChannel channel;
+	private final BinaryFormat format;
+	private final ByteBuffer buf;
+	private long count;
+
+	/**
+	 * Crea il file, sostituendolo se esiste.
+	 *
+	 * @param file file da scrivere.
+	 * @param g geometria dei sudoku.
+	 * @param solutions true per scrivere soluzioni complete, false per sudoku.
+	 * @throws IOException
+	 */
+	public BinaryPuzzleWriter(Path file, Geometry g, boolean solutions) throws IOException {
+		format = new BinaryFormat(g, solutions ? BinaryFormat.SOLUTIONS : BinaryFormat.PUZZLES);
+		channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		int records = Math.max(1, BinaryPuzzleReader.DEFAULT_BUFFER / format.getRecordBytes());
+		buf = ByteBuffer.allocateDirect(Math.max(BinaryFormat.HEADER, records * format.getRecordBytes()));
+		// il numero di record viene scritto alla chiusura.
+		format.writeHeader(buf, 0);
+	}
+
+	public BinaryFormat getFormat(){ return format; }
+
+	/**
+	 * @param grid valori dei blocchi, indicizzati per y*N+x, 0 se vuoto.
+	 * @throws IllegalArgumentException se grid non ha la dimensione del file, o non e' una soluzione
+	 * in un file di soluzioni.
+	 * @throws IOException
+	 */
+	public void write(int[] grid) throws IOException {
+		if(buf.remaining() < format.getRecordBytes()) flush();
+		format.encode(grid, buf);
+		count++;
+	}
+
+	/**
+	 * @param s istanza da scrivere, della dimensione del file.
+	 * @throws IOException
+	 */
+	public void write(SudokuBoard s) throws IOException {
+		if(buf.remaining() < format.getRecordBytes()) flush();
+		format.encode(s, buf);
+		count++;
+	}
+
+	/**
+	 * @return Il numero di record scritti.
+	 */
+	public long getCount(){ return count; }
+
+	private void flush() throws IOException {
+		buf.flip();
+		while(buf.hasRemaining()) channel.write(buf);
+		buf.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+			ByteBuffer h = ByteBuffer.allocate(BinaryFormat.HEADER);
+			format.writeHeader(h, count);
+			h.flip();
+			while(h.hasRemaining()) channel.write(h, h.position());
+		} finally {
+			channel.close();
+		}
+	}
+}
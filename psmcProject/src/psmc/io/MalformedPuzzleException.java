@@ -0,0 +1,29 @@
+package psmc.io;
+
+import java.io.IOException;
+
+/**
+ * Segnala un sudoku malformato in un file di input, con la posizione in byte in cui si trova.
+ *
+ * @author  Mattia Paolacci
+ */
+public class MalformedPuzzleException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long offset;
+
+	/**
+	 * @param offset posizione in byte, dall'inizio del file, del carattere non valido.
+	 * @param message descrizione dell'errore.
+	 */
+	public MalformedPuzzleException(long offset, String message){
+		super("byte "+offset+": "+message);
+		this.offset = offset;
+	}
+
+	/**
+	 * @return La posizione in byte dell'errore, dall'inizio del file.
+	 */
+	public long getOffset(){ return offset; }
+}
@@ -0,0 +1,216 @@
+package psmc.io;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import psmc.sudokupart.Geometry;
+import psmc.sudokupart.Grids;
+
+/**
+ * Lettore di file di sudoku mappati in memoria, che decodifica i blocchi direttamente da byte
+ * senza creare stringhe.
+ * <p>
+ * Riconosce due formati, anche mescolati nello stesso file:
+ * <ul>
+ * <li>una riga da N*N caratteri, eventualmente seguita da altro testo dopo uno spazio;</li>
+ * <li>N righe da N caratteri, come il formato a 9 righe dei file dati a {@link psmc.MainClassParallel}.</li>
+ * </ul>
+ * N e' il lato di una geometria supportata (9, 16 o 25) e i caratteri sono quelli di {@link Grids}:
+ * "." o "0" per i blocchi vuoti, cifre e lettere per i valori. Righe vuote e righe che iniziano con
+ * "#" sono ignorate.
+ * Il file viene mappato a finestre, quindi sono supportati file di qualunque dimensione.
+ * <p>
+ * Un sudoku malformato causa una {@link MalformedPuzzleException} con la posizione in byte
+ * dell'errore; la lettura puo' continuare dal sudoku successivo.
+ *
+ * @author  Mattia Paolacci
+ */
+public class PuzzleReader implements PuzzleSource {
+
+	/**
+	 * Numero massimo di blocchi di un sudoku, quello del 25x25: la dimensione dell'array da passare a {@link #next(int[])}.
+	 */
+	public static final int MAX_CELLS = Geometry.ofBox(Geometry.MAX_BOX).getCells();
+
+	/**
+	 * Dimensione di default di una finestra mappata.
+	 */
+	public static final int DEFAULT_WINDOW = 64 << 20;
+
+	private final FileChannel channel;
+	private final long size;
+	private final int window;
+
+	private MappedByteBuffer buf;
+	/**
+	 * Posizione nel file del primo byte della finestra corrente.
+	 */
+	private long base;
+	/**
+	 * Posizione nel file del prossimo byte da leggere.
+	 */
+	private long pos;
+	/**
+	 * Posizione nel file dell'ultimo sudoku letto.
+	 */
+	private long recordOffset = -1;
+
+	/**
+	 * @param file file da leggere.
+	 * @throws IOException
+	 */
+	public PuzzleReader(Path file) throws IOException {
+		this(file, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * @param file file da leggere.
+	 * @param window dimensione delle finestre mappate in memoria, in byte.
+	 * @throws IOException
+	 */
+	public PuzzleReader(Path file, int window) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		size = channel.size();
+		this.window = window;
+	}
+
+	/**
+	 * @return Il prossimo byte, -1 alla fine del file.
+	 */
+	private int read() throws IOException {
+		if(pos >= size) return -1;
+		if(buf == null || pos - base >= buf.limit()){
+			base = pos;
+			buf = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(window, size - base));
+		}
+		return buf.get((int) (pos++ - base));
+	}
+
+	/**
+	 * @return Il prossimo byte senza consumarlo, -1 alla fine del file.
+	 */
+	private int peek() throws IOException {
+		int c = read();
+		if(c >= 0) pos--;
+		return c;
+	}
+
+	private void skipLine() throws IOException {
+		int c;
+		while((c = read()) >= 0 && c != '\n');
+	}
+
+	/**
+	 * Legge i blocchi di una riga in grid a partire da from, fermandosi al primo carattere che
+	 * non rappresenta un blocco o dopo max blocchi.
+	 * @return Il numero di blocchi letti.
+	 */
+	private int readCells(int[] grid, int from, int max) throws IOException {
+		int n = 0;
+		int v;
+		while(n < max && (v = Grids.charValue(peek())) >= 0){
+			grid[from + n++] = v;
+			pos++;
+		}
+		return n;
+	}
+
+	/**
+	 * @return true se il resto della riga contiene solo spazi; consuma il fine riga.
+	 */
+	private boolean restOfLineBlank() throws IOException {
+		int c;
+		while((c = read()) >= 0 && c != '\n'){
+			if(c != ' ' && c != '\t' && c != '\r') return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Legge il prossimo sudoku.
+	 *
+	 * @param grid array di almeno {@link #MAX_CELLS} elementi in cui scrivere i valori dei blocchi,
+	 * indicizzati per y*N+x.
+	 * @return Il numero di blocchi del sudoku letto, 0 se il file e' terminato.
+	 * @throws MalformedPuzzleException se il sudoku e' malformato; la lettura riprende dalla riga successiva.
+	 * @throws IOException
+	 */
+	@Override
+	public int next(int[] grid) throws IOException {
+		// salta righe vuote e commenti.
+		while(true){
+			int c = peek();
+			if(c < 0) return 0;
+			if(c == '#') skipLine();
+			else if(c == ' ' || c == '\t' || c == '\r' || c == '\n') pos++;
+			else break;
+		}
+		recordOffset = pos;
+		int n = readCells(grid, 0, MAX_CELLS);
+		long after = pos;
+		Geometry g = Geometry.forCells(n);
+		if(g != null){
+			// formato a una riga: il resto della riga e' ignorato se separato da uno spazio.
+			int c = peek();
+			if(c >= 0 && c != ' ' && c != '\t' && c != '\r' && c != '\n')
+				throw malformed("carattere non valido dopo "+n+" blocchi");
+			checkRange(grid, 0, n, g.getSize(), recordOffset);
+			skipLine();
+			return n;
+		}
+		g = Geometry.forSize(n);
+		if(g != null && restOfLineBlank()){
+			// formato a N righe.
+			checkRange(grid, 0, n, n, recordOffset);
+			for(int row = 1; row<n; row++){
+				long rowStart = pos;
+				int m = readCells(grid, row*n, n);
+				long rowEnd = pos;
+				if(m != n || !restOfLineBlank()){
+					pos = rowEnd;
+					throw malformed("riga "+(row+1)+" del sudoku non valida");
+				}
+				checkRange(grid, row*n, n, n, rowStart);
+			}
+			return n*n;
+		}
+		pos = after;
+		throw malformed("attesi 81, 256 o 625 blocchi su una riga o altrettante righe, trovati "+n+" blocchi");
+	}
+
+	/**
+	 * Controlla che i valori letti in grid da from a from+count non superino size.
+	 * @param start posizione nel file del primo dei valori.
+	 */
+	private void checkRange(int[] grid, int from, int count, int size, long start) throws IOException {
+		for(int i = 0; i<count; i++){
+			if(grid[from+i] > size){
+				pos = start + i;
+				throw malformed("valore "+grid[from+i]+" fuori dal sudoku "+size+"x"+size);
+			}
+		}
+	}
+
+	/**
+	 * Crea l'eccezione per il carattere in posizione corrente e porta la lettura alla riga successiva.
+	 */
+	private MalformedPuzzleException malformed(String message) throws IOException {
+		MalformedPuzzleException e = new MalformedPuzzleException(pos, message);
+		skipLine();
+		return e;
+	}
+
+	/**
+	 * @return La posizione in byte, dall'inizio del file, dell'ultimo sudoku letto.
+	 */
+	public long getRecordOffset(){ return recordOffset; }
+
+	@Override
+	public void close() throws IOException {
+		buf = null;
+		channel.close();
+	}
+}
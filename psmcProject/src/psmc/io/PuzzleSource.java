@@ -0,0 +1,36 @@
+package psmc.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Raccolta di sudoku letta in sequenza: un file di testo con {@link PuzzleReader} o un file binario
+ * con {@link BinaryPuzzleReader}.
+ *
+ * @author  Mattia Paolacci
+ */
+public interface PuzzleSource extends Closeable {
+
+	/**
+	 * Legge il prossimo sudoku.
+	 *
+	 * @param grid array di almeno {@link PuzzleReader#MAX_CELLS} elementi in cui scrivere i valori dei
+	 * blocchi, indicizzati per y*N+x.
+	 * @return Il numero di blocchi del sudoku letto, 0 se la raccolta e' terminata.
+	 * @throws MalformedPuzzleException se il sudoku e' malformato; la lettura puo' continuare dal successivo.
+	 * @throws IOException
+	 */
+	int next(int[] grid) throws IOException;
+
+	/**
+	 * Apre un file di sudoku, binario se inizia con {@link BinaryFormat#MAGIC}, altrimenti di testo.
+	 *
+	 * @param file file da leggere.
+	 * @return Il lettore adatto al formato del file.
+	 * @throws IOException
+	 */
+	static PuzzleSource open(Path file) throws IOException {
+		return BinaryPuzzleReader.isBinary(file) ? new BinaryPuzzleReader(file) : new PuzzleReader(file);
+	}
+}
@@ -0,0 +1,236 @@
+package psmc.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import psmc.sudokupart.Canonical;
+
+/**
+ * Cache su disco dei numeri di soluzioni, indicizzata dalla forma canonica dei sudoku
+ * ({@link Canonical}): un sudoku gia' contato, o uno equivalente, viene risolto leggendo il
+ * risultato, anche in un'esecuzione successiva.
+ * <p>
+ * Il file e' una tabella hash di dimensione fissa mappata in memoria:
+ * <pre>
+ * intestazione (64 byte)  MAGIC, numero di gruppi, orologio, successi e ricerche di tutte le esecuzioni
+ * voce (48 byte)          chiave (128 bit), ultimo uso (0 se libera), lunghezza del conteggio, conteggio
+ * </pre>
+ * La chiave sono i primi 128 bit dello SHA-256 della forma canonica. Le voci sono divise in gruppi
+ * di {@link #WAYS}: un gruppo pieno espelle la voce usata meno di recente, secondo un orologio che
+ * avanza ad ogni ricerca. La dimensione e' fissata alla creazione del file, e fa da limite alla memoria
+ * e al disco usati; i conteggi che non stanno in 127 bit non vengono memorizzati.
+ * <p>
+ * Una voce viene riscritta con l'ultimo uso a 0, portato su disco prima di toccare chiave e conteggio,
+ * e resa valida solo dopo che questi sono su disco: un processo interrotto lascia al piu' una voce libera.
+ * <p>
+ * Il file e' bloccato in modo esclusivo finche' la cache e' aperta: due processi non possono usarlo
+ * insieme. I metodi sono sincronizzati, quindi la cache puo' essere condivisa tra i thread.
+ *
+ * @author  Mattia Paolacci
+ */
+public class ResultCache implements Closeable {
+
+	private static final long MAGIC = 0x5053_4D43_5243_3031L;  // "PSMCRC01"
+	private static final int HEADER = 64;
+	private static final int ENTRY = 48;
+	private static final int COUNT_BYTES = 16;
+
+	/**
+	 * Voci per gruppo.
+	 */
+	public static final int WAYS = 8;
+
+	private final FileChannel channel;
+	private final FileLock lock;
+	private final MappedByteBuffer buf;
+	private final int sets;
+	private final MessageDigest sha;
+	private long clock;
+
+	private long hits, misses, stores, evictions;
+
+	/**
+	 * Apre la cache, creandola se il file non esiste.
+	 *
+	 * @param file file della cache.
+	 * @param bytes dimensione del file se va creato; un file esistente mantiene la sua.
+	 * @throws IOException se il file non e' una cache o e' gia' in uso.
+	 */
+	public ResultCache(Path file, long bytes) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		try {
+			FileLock l;
+			try {
+				l = channel.tryLock();
+			} catch (OverlappingFileLockException e) {
+				l = null;  // gia' aperta da questa JVM.
+			}
+			lock = l;
+			if(lock == null) throw new IOException(file+": la cache e' in uso da un altro processo");
+			boolean create = channel.size() == 0;
+			int n;
+			if(create){
+				long s = Math.max(1, (bytes - HEADER) / ((long) ENTRY * WAYS));
+				n = (int) Math.min(s, (Integer.MAX_VALUE - HEADER) / ((long) ENTRY * WAYS));
+			}
+			else {
+				if(channel.size() < HEADER) throw new IOException(file+": non e' una cache dei risultati");
+				MappedByteBuffer h = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+				if(h.getLong(0) != MAGIC) throw new IOException(file+": non e' una cache dei risultati");
+				n = h.getInt(8);
+				if(channel.size() != HEADER + (long) n * WAYS * ENTRY)
+					throw new IOException(file+": dimensione della cache non valida");
+			}
+			sets = n;
+			buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) n * WAYS * ENTRY);
+			if(create){
+				buf.putLong(0, MAGIC);
+				buf.putInt(8, n);
+			}
+			clock = buf.getLong(16);
+			sha = MessageDigest.getInstance("SHA-256");
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		} catch (NoSuchAlgorithmException e) {
+			channel.close();
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @param canonical forma canonica del sudoku, vedi {@link Canonical#of(int[])}.
+	 * @return Il numero di soluzioni memorizzato, null se il sudoku non e' nella cache.
+	 */
+	public synchronized BigInteger get(int[] canonical){
+		long[] key = key(canonical);
+		int e = find(key);
+		if(e < 0){
+			misses++;
+			return null;
+		}
+		hits++;
+		buf.putLong(e+16, ++clock);
+		byte[] c = new byte[buf.get(e+24)];
+		for(int i = 0; i<c.length; i++) c[i] = buf.get(e+32+i);
+		return new BigInteger(c);
+	}
+
+	/**
+	 * Memorizza il numero esatto di soluzioni di un sudoku, espellendo se serve la voce del gruppo
+	 * usata meno di recente.
+	 *
+	 * @param canonical forma canonica del sudoku.
+	 * @param count numero esatto di soluzioni.
+	 */
+	public synchronized void put(int[] canonical, BigInteger count){
+		byte[] c = count.toByteArray();
+		if(c.length > COUNT_BYTES) return;
+		long[] key = key(canonical);
+		int e = find(key);
+		if(e < 0){
+			int base = HEADER + set(key) * WAYS * ENTRY;
+			e = base;
+			for(int i = 0; i<WAYS; i++){
+				int p = base + i*ENTRY;
+				long used = buf.getLong(p+16);
+				if(used == 0){
+					e = p;
+					break;
+				}
+				if(used < buf.getLong(e+16)) e = p;
+			}
+			if(buf.getLong(e+16) != 0) evictions++;
+		}
+		// la voce resta non valida mentre viene riscritta: un processo terminato a meta' non deve lasciare
+		// la chiave di un sudoku con il conteggio di un altro.
+		if(buf.getLong(e+16) != 0){
+			buf.putLong(e+16, 0);
+			buf.force(e+16, 8);
+		}
+		buf.putLong(e, key[0]);
+		buf.putLong(e+8, key[1]);
+		buf.put(e+24, (byte) c.length);
+		for(int i = 0; i<c.length; i++) buf.put(e+32+i, c[i]);
+		// l'ultimo uso rende valida la voce: va scritto su disco dopo chiave e conteggio.
+		buf.force(e, ENTRY);
+		buf.putLong(e+16, ++clock);
+		stores++;
+	}
+
+	/**
+	 * @return La posizione della voce con la chiave data, -1 se non c'e'.
+	 */
+	private int find(long[] key){
+		int base = HEADER + set(key) * WAYS * ENTRY;
+		for(int i = 0; i<WAYS; i++){
+			int p = base + i*ENTRY;
+			if(buf.getLong(p+16) != 0 && buf.getLong(p) == key[0] && buf.getLong(p+8) == key[1]) return p;
+		}
+		return -1;
+	}
+
+	private int set(long[] key){ return (int) Long.remainderUnsigned(key[0], sets); }
+
+	/**
+	 * @return I primi 128 bit dello SHA-256 della forma canonica.
+	 */
+	private long[] key(int[] canonical){
+		byte[] b = new byte[canonical.length];
+		for(int i = 0; i<b.length; i++) b[i] = (byte) canonical[i];
+		byte[] d = sha.digest(b);
+		long hi = 0, lo = 0;
+		for(int i = 0; i<8; i++){
+			hi = hi << 8 | (d[i] & 0xFF);
+			lo = lo << 8 | (d[8+i] & 0xFF);
+		}
+		return new long[]{ hi, lo };
+	}
+
+	/**
+	 * @return Il numero di voci della cache.
+	 */
+	public int getCapacity(){ return sets * WAYS; }
+
+	public synchronized long getHits(){ return hits; }
+
+	public synchronized long getMisses(){ return misses; }
+
+	/**
+	 * @return Riepilogo su una riga: ricerche e successi di questa esecuzione e di tutte quelle che
+	 * hanno usato il file, inserimenti ed espulsioni.
+	 */
+	@Override
+	public synchronized String toString(){
+		long totalHits = buf.getLong(24) + hits, totalLookups = buf.getLong(32) + hits + misses;
+		return "ricerche "+(hits+misses)+", successi "+hits+" ("+rate(hits, hits+misses)+"), inserimenti "+stores
+				+", espulsioni "+evictions+", voci "+getCapacity()+"; in tutte le esecuzioni successi "+totalHits
+				+" su "+totalLookups+" ("+rate(totalHits, totalLookups)+")";
+	}
+
+	private static String rate(long hits, long lookups){
+		return lookups == 0 ? "-" : String.format("%.1f%%", 100.0 * hits / lookups);
+	}
+
+	/**
+	 * Aggiorna l'intestazione, scrive la cache su disco e rilascia il file.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		buf.putLong(16, clock);
+		buf.putLong(24, buf.getLong(24) + hits);
+		buf.putLong(32, buf.getLong(32) + hits + misses);
+		buf.force();
+		lock.release();
+		channel.close();
+	}
+}
@@ -0,0 +1,122 @@
+package psmc.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import psmc.Options;
+import psmc.io.MalformedPuzzleException;
+import psmc.io.PuzzleReader;
+import psmc.io.PuzzleSource;
+import psmc.sudokupart.Grids;
+
+/**
+ * Client a riga di comando di {@link SolverServer}: manda i sudoku di un file, uno per richiesta sulla
+ * stessa connessione, e scrive le risposte.
+ * Uso: <code>java psmc.server.SolverClient [opzioni] file|-</code>.
+ * <p>
+ * Il file e' in uno dei formati di {@link PuzzleSource}; lo standard input ("-") nel formato a una riga.
+ * Per ogni sudoku viene scritta una riga con indice, sudoku e risposta, seguita dalle soluzioni se
+ * richieste; alla fine, sullo standard error, i percentili della latenza misurata dal client.
+ * Opzioni proprie:
+ * <ul>
+ * <li><code>--port=N</code> o <code>--socket=file</code> indirizzo del server, come per {@link SolverServer}.</li>
+ * <li><code>--unique</code> chiede solo se la soluzione e' unica; <code>--solutions=N</code> chiede al piu' N
+ * soluzioni; altrimenti il numero di soluzioni.</li>
+ * <li><code>--deadline=MS</code> scadenza di ogni richiesta, di default quella del server.</li>
+ * <li><code>--repeat=N</code> manda ogni sudoku N volte, per misurare la latenza; di default 1.</li>
+ * </ul>
+ *
+ * @author  Mattia Paolacci
+ */
+public class SolverClient {
+
+	public static void main(String args[]) throws IOException
+	{
+		Options opt = Options.parse(args);
+		String command = opt.has("solutions") ? "SOLUTIONS" : opt.has("unique") ? "UNIQUE" : "COUNT";
+		String suffix = (opt.has("solutions") ? " "+opt.getInt("solutions", 1) : "")
+				+ (opt.has("deadline") ? " "+opt.getInt("deadline", 0) : "");
+		int repeat = opt.getInt("repeat", 1);
+		if(repeat < 1) throw new IllegalArgumentException("--repeat: deve essere almeno 1");
+		List<String> puzzles = read(opt.getArgument(0));
+
+		SocketAddress address = opt.has("socket") ? UnixDomainSocketAddress.of(opt.get("socket", null))
+				: new InetSocketAddress(InetAddress.getLoopbackAddress(), opt.getInt("port", SolverServer.DEFAULT_PORT));
+		long[] latencies = new long[puzzles.size() * repeat];
+		int n = 0;
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+		try(SocketChannel c = SocketChannel.open(address);
+				BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(c), StandardCharsets.UTF_8));
+				Writer req = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(c), StandardCharsets.UTF_8))){
+			for(int i = 0; i<puzzles.size(); i++){
+				for(int k = 0; k<repeat; k++){
+					long start = System.nanoTime();
+					req.write(command+" "+puzzles.get(i)+suffix+"\n");
+					req.flush();
+					String reply = in.readLine();
+					if(reply == null) throw new IOException("connessione chiusa dal server");
+					List<String> solutions = new ArrayList<String>();
+					if(command.equals("SOLUTIONS") && reply.startsWith("OK ")){
+						int count = Integer.parseInt(reply.substring(3));
+						for(int j = 0; j<count; j++) solutions.add(in.readLine());
+					}
+					latencies[n++] = System.nanoTime() - start;
+					if(k > 0) continue;
+					out.write(i+"\t"+puzzles.get(i)+"\t"+reply+"\n");
+					for(String s : solutions) out.write(s+"\n");
+				}
+			}
+			req.write("QUIT\n");
+		}
+		out.flush();
+		Arrays.sort(latencies);
+		System.err.println("Richieste: "+n);
+		System.err.println("Latenza: p50 "+SolverServer.percentile(latencies, 50)+" ms, p99 "
+				+SolverServer.percentile(latencies, 99)+" ms, max "+SolverServer.percentile(latencies, 100)+" ms");
+	}
+
+	/**
+	 * @return I sudoku del file, nel formato a una riga; quelli malformati vengono saltati con un avviso.
+	 */
+	private static List<String> read(String file) throws IOException {
+		List<String> puzzles = new ArrayList<String>();
+		if(file.equals("-")){
+			BufferedReader b = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+			String line;
+			while((line = b.readLine()) != null){
+				line = line.trim();
+				if(line.isEmpty() || line.charAt(0) == '#') continue;
+				puzzles.add(line.split("\\s+")[0]);
+			}
+			return puzzles;
+		}
+		int[] grid = new int[PuzzleReader.MAX_CELLS];
+		try(PuzzleSource r = PuzzleSource.open(Paths.get(file))){
+			while(true){
+				try {
+					int cells = r.next(grid);
+					if(cells == 0) break;
+					puzzles.add(Grids.toLine(Arrays.copyOf(grid, cells)));
+				} catch (MalformedPuzzleException e) {
+					System.err.println("Avviso: "+e.getMessage());
+				}
+			}
+		}
+		return puzzles;
+	}
+}
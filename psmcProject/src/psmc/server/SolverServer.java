@@ -0,0 +1,375 @@
+package psmc.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import psmc.CountResult;
+import psmc.MainClassParallel;
+import psmc.Options;
+import psmc.Scheduler;
+import psmc.SolverConfig;
+import psmc.dlx.DlxSolver;
+import psmc.sudokupart.Grids;
+import psmc.sudokupart.SudokuBoard;
+
+/**
+ * Processo residente che risolve sudoku ricevuti su un socket locale, cosi' che ogni richiesta trovi la
+ * JVM gia' avviata e il solutore gia' compilato dal JIT.
+ * Uso: <code>java psmc.server.SolverServer [opzioni]</code>, vedi {@link Options}; il client e' {@link SolverClient}.
+ * <p>
+ * Il protocollo e' a righe di testo UTF-8. Ogni richiesta e' una riga, con il sudoku nel formato a una riga:
+ * <pre>
+ * COUNT sudoku [ms]            OK numero di soluzioni
+ * UNIQUE sudoku [ms]           OK nessuna|unica|multipla
+ * SOLUTIONS sudoku max [ms]    OK k, seguita da k righe con le soluzioni (al piu' max)
+ * STATS                        OK riepilogo delle richieste servite
+ * PING                         OK
+ * QUIT                         chiude la connessione
+ * </pre>
+ * ms e' la scadenza della richiesta, di default quella di <code>--deadline</code>: allo scadere la ricerca
+ * viene cancellata e la risposta e' <code>SCADUTA</code>. Una richiesta non valida ha risposta
+ * <code>ERRORE messaggio</code>. Le richieste di una connessione sono servite in ordine, quelle di connessioni
+ * diverse insieme, tutte nello stesso pool di {@link Scheduler}.
+ * <p>
+ * Il server ha due limiti, nessuno dei quali mette in coda le richieste. Ogni connessione e' servita da
+ * uno di <code>--connections</code> thread; le connessioni oltre queste aspettano un thread libero, al piu'
+ * altrettante, e le altre ricevono <code>OCCUPATO</code> e vengono chiuse. <code>--queue</code> e' invece un
+ * limite di ammissione: se le ricerche in corso sono gia' tante, la richiesta non aspetta e la risposta
+ * e' subito <code>OCCUPATO</code>, da ripetere piu' tardi.
+ * <p>
+ * Opzioni proprie:
+ * <ul>
+ * <li><code>--port=N</code> porta TCP, solo sull'indirizzo di loopback, di default {@link #DEFAULT_PORT}.</li>
+ * <li><code>--socket=file</code> socket Unix al posto della porta TCP.</li>
+ * <li><code>--connections=N</code> connessioni servite insieme, di default 16.</li>
+ * <li><code>--queue=N</code> ricerche in corso al piu', di default 64; le richieste oltre il limite sono rifiutate.</li>
+ * <li><code>--deadline=MS</code> scadenza di default delle richieste, di default 10000 ms; 0 per nessuna.</li>
+ * <li><code>--warmup=N</code> risoluzioni di un sudoku di prova all'avvio, per compilare il solutore, di default 2000.</li>
+ * </ul>
+ *
+ * @author  Mattia Paolacci
+ */
+public class SolverServer implements Closeable {
+
+	public static final int DEFAULT_PORT = 7190;
+
+	/**
+	 * Numero massimo di soluzioni di una richiesta SOLUTIONS.
+	 */
+	public static final int MAX_SOLUTIONS = 100000;
+
+	/**
+	 * Sudoku risolto durante il riscaldamento.
+	 */
+	private static final String WARMUP = "..3.2.6..9..3.5..1..18.64....81.29..7.......8..67.82....26.95..8..2.3..9..5.1.3..";
+
+	/**
+	 * Latenze memorizzate per i percentili di STATS: le piu' recenti.
+	 */
+	private static final int LATENCIES = 4096;
+
+	private final Options opt;
+	private final ForkJoinPool pool;
+	private final Semaphore slots;
+	private final int capacity;
+	private final long deadline;
+	private final ScheduledExecutorService timer;
+	private final ThreadPoolExecutor connections;
+	private ServerSocketChannel server;
+	private Path socketFile;
+
+	private final LongAdder served = new LongAdder(), busy = new LongAdder(), expired = new LongAdder(),
+			errors = new LongAdder();
+	private final long[] latencies = new long[LATENCIES];
+	private long latencyCount;
+
+	/**
+	 * @param opt opzioni dei parametri della ricerca e del server.
+	 * @param pool pool in cui eseguire le ricerche.
+	 */
+	public SolverServer(Options opt, ForkJoinPool pool){
+		this.opt = opt;
+		this.pool = pool;
+		capacity = opt.getInt("queue", 64);
+		if(capacity < 1) throw new IllegalArgumentException("--queue: deve essere almeno 1");
+		slots = new Semaphore(capacity);
+		deadline = opt.getInt("deadline", 10000);
+		int threads = opt.getInt("connections", 16);
+		if(threads < 1) throw new IllegalArgumentException("--connections: deve essere almeno 1");
+		connections = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(threads), r -> {
+			Thread t = new Thread(r, "psmc-connection");
+			t.setDaemon(true);
+			return t;
+		});
+		timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "psmc-deadline");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	public static void main(String args[]) throws IOException
+	{
+		Options opt = Options.parse(args);
+		try(Scheduler scheduler = opt.scheduler(); SolverServer srv = new SolverServer(opt, scheduler.getPool())){
+			long start = System.nanoTime();
+			int n = srv.warmup(opt.getInt("warmup", 2000));
+			System.out.println("Riscaldamento: "+n+" risoluzioni in "+(System.nanoTime() - start) / 1000000+" ms");
+			SocketAddress address = srv.bind();
+			System.out.println("In ascolto su "+address);
+			Runtime.getRuntime().addShutdownHook(new Thread(srv::shutdown));
+			srv.serve();
+		}
+	}
+
+	/**
+	 * Risolve n volte il sudoku di prova, per far compilare al JIT il percorso delle richieste.
+	 * @return Il numero di risoluzioni.
+	 */
+	public int warmup(int n){
+		int[] grid = Grids.parseLine(WARMUP);
+		for(int i = 0; i<n; i++){
+			solve(grid, opt.solverConfig().setMetrics(null));
+			solve(grid, opt.solverConfig().setMetrics(null).setDigitSymmetry(false).setLimit(2));
+		}
+		return n;
+	}
+
+	/**
+	 * Apre il socket scelto con <code>--socket</code> o <code>--port</code>.
+	 * @return L'indirizzo su cui il server e' in ascolto.
+	 */
+	public SocketAddress bind() throws IOException {
+		if(opt.has("socket")){
+			socketFile = Paths.get(opt.get("socket", null));
+			// un file rimasto da un server terminato impedirebbe il bind.
+			Files.deleteIfExists(socketFile);
+			server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+			server.bind(UnixDomainSocketAddress.of(socketFile), capacity);
+		}
+		else {
+			server = ServerSocketChannel.open();
+			server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), opt.getInt("port", DEFAULT_PORT)), capacity);
+		}
+		return server.getLocalAddress();
+	}
+
+	/**
+	 * Accetta connessioni finche' il server non viene chiuso e le passa ai thread delle connessioni;
+	 * quelle che non trovano posto nemmeno tra le connessioni in attesa vengono rifiutate.
+	 */
+	public void serve() throws IOException {
+		try {
+			while(true){
+				SocketChannel c = server.accept();
+				try {
+					connections.execute(() -> handle(c));
+				} catch (RejectedExecutionException e) {
+					busy.increment();
+					refuse(c);
+				}
+			}
+		} catch (ClosedChannelException e) {
+			// chiuso da shutdown().
+		}
+	}
+
+	/**
+	 * Risponde OCCUPATO ad una connessione senza servirla, e la chiude.
+	 */
+	private static void refuse(SocketChannel c){
+		try(c){
+			c.write(StandardCharsets.UTF_8.encode("OCCUPATO\n"));
+		} catch (IOException e) {
+			// il client ha gia' chiuso.
+		}
+	}
+
+	/**
+	 * Serve le richieste di una connessione, in ordine.
+	 */
+	private void handle(SocketChannel c){
+		try(c; BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(c), StandardCharsets.UTF_8));
+				Writer out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(c), StandardCharsets.UTF_8), 1 << 16)){
+			String line;
+			while((line = in.readLine()) != null){
+				line = line.trim();
+				if(line.isEmpty()) continue;
+				if(line.equals("QUIT")) break;
+				out.write(request(line));
+				out.flush();
+			}
+		} catch (IOException e) {
+			// connessione chiusa dal client.
+		}
+	}
+
+	/**
+	 * @param line riga di richiesta.
+	 * @return La risposta, con il fine riga.
+	 */
+	String request(String line){
+		String[] w = line.split("\\s+");
+		String cmd = w[0];
+		if(cmd.equals("PING")) return "OK\n";
+		if(cmd.equals("STATS")) return "OK "+this+"\n";
+		if(!cmd.equals("COUNT") && !cmd.equals("UNIQUE") && !cmd.equals("SOLUTIONS")){
+			errors.increment();
+			return "ERRORE comando sconosciuto '"+cmd+"'\n";
+		}
+		if(!slots.tryAcquire()){
+			busy.increment();
+			return "OCCUPATO\n";
+		}
+		long start = System.nanoTime();
+		try {
+			int args = cmd.equals("SOLUTIONS") ? 3 : 2;
+			if(w.length < args || w.length > args+1) throw new IllegalArgumentException("numero di argomenti errato");
+			int[] grid = Grids.parseLine(w[1]);
+			long ms = w.length > args ? Long.parseLong(w[args]) : deadline;
+			SolverConfig cfg = opt.solverConfig();
+			List<String> solutions = null;
+			if(cmd.equals("UNIQUE")) cfg.setDigitSymmetry(false).setLimit(2);
+			else if(cmd.equals("SOLUTIONS")){
+				int max = Integer.parseInt(w[2]);
+				if(max < 1 || max > MAX_SOLUTIONS) throw new IllegalArgumentException("max deve essere tra 1 e "+MAX_SOLUTIONS);
+				List<String> found = new ArrayList<String>();
+				// in parallelo qualche soluzione puo' arrivare dopo il limite: viene scartata.
+				cfg.setDigitSymmetry(false).setLimit(max).setListener(s -> {
+					synchronized(found){
+						if(found.size() < max) found.add(Grids.toLine(s));
+					}
+				});
+				solutions = found;
+			}
+			AtomicBoolean timedOut = new AtomicBoolean();
+			ScheduledFuture<?> expiry = ms > 0 ? timer.schedule(() -> { timedOut.set(true); cfg.cancel(); }, ms, TimeUnit.MILLISECONDS) : null;
+			CountResult r;
+			try {
+				// le soluzioni arrivano solo dal backtracking.
+				r = solutions != null ? cfg.result(MainClassParallel.sudokuSolve(board(grid), cfg, pool)) : solve(grid, cfg);
+			} finally {
+				if(expiry != null) expiry.cancel(false);
+			}
+			if(timedOut.get()){
+				expired.increment();
+				return "SCADUTA\n";
+			}
+			if(cmd.equals("COUNT")) return "OK "+r+"\n";
+			if(cmd.equals("UNIQUE")) return "OK "+r.uniqueness()+"\n";
+			StringBuilder b = new StringBuilder();
+			synchronized(solutions){
+				b.append("OK ").append(solutions.size()).append('\n');
+				for(String s : solutions) b.append(s).append('\n');
+			}
+			return b.toString();
+		} catch (RuntimeException e) {
+			errors.increment();
+			return "ERRORE "+e.getMessage()+"\n";
+		} finally {
+			slots.release();
+			record(System.nanoTime() - start);
+		}
+	}
+
+	private SudokuBoard board(int[] grid){
+		SudokuBoard s = opt.newBoard(grid);
+		s.findLegalValue();
+		s.findBlockWithOneLegalValue();
+		return s;
+	}
+
+	/**
+	 * Conta le soluzioni nel pool del server, con il motore scelto dalle opzioni.
+	 */
+	private CountResult solve(int[] grid, SolverConfig cfg){
+		SudokuBoard s = board(grid);
+		BigInteger count = opt.isDlx() ? DlxSolver.count(s, cfg, pool, opt.getInt("dlx-split", 2))
+				: MainClassParallel.sudokuSolve(s, cfg, pool);
+		return cfg.result(count);
+	}
+
+	private synchronized void record(long nanos){
+		latencies[(int) (latencyCount++ % LATENCIES)] = nanos;
+		served.increment();
+	}
+
+	/**
+	 * @return Riepilogo su una riga: richieste servite, rifiutate, scadute e non valide, percentili della
+	 * latenza delle ultime {@value #LATENCIES} richieste.
+	 */
+	@Override
+	public synchronized String toString(){
+		long[] l = Arrays.copyOf(latencies, (int) Math.min(latencyCount, LATENCIES));
+		Arrays.sort(l);
+		return "richieste "+served.sum()+", occupato "+busy.sum()+", scadute "+expired.sum()+", errori "+errors.sum()
+				+", latenza p50 "+percentile(l, 50)+" ms, p99 "+percentile(l, 99)+" ms, max "+percentile(l, 100)+" ms";
+	}
+
+	/**
+	 * @param sorted latenze in ns, ordinate.
+	 * @return Il percentile p in ms, "-" se non ci sono latenze.
+	 */
+	static String percentile(long[] sorted, int p){
+		if(sorted.length == 0) return "-";
+		int i = (int) Math.min(sorted.length-1, Math.max(0, Math.ceil(sorted.length * p / 100.0) - 1));
+		return String.format("%.2f", sorted[i] / 1e6);
+	}
+
+	/**
+	 * Chiude il socket e fa terminare {@link #serve()}, senza lanciare eccezioni: va bene anche per un
+	 * hook di terminazione. Le connessioni aperte terminano con la JVM.
+	 */
+	public void shutdown(){
+		timer.shutdownNow();
+		connections.shutdownNow();
+		try {
+			if(server != null) server.close();
+			if(socketFile != null) Files.deleteIfExists(socketFile);
+		} catch (IOException e) {
+			// il socket viene comunque rilasciato con la JVM.
+		}
+	}
+
+	/**
+	 * Come {@link #shutdown()}.
+	 */
+	@Override
+	public void close(){
+		shutdown();
+	}
+}
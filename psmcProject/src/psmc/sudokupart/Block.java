@@ -145,12 +145,27 @@ public class Block{
 	}
 	
 	/**
-	 * Segnala il valore dato come illegale, se il blocco è vuoto.
+	 * Maschera di bit dei valori legali: il bit (v-1) è a 1 se il valore v è legale.
+	 * @return La maschera dei valori legali, 0 se il blocco è pieno.
+	 */
+	public int getLegalMask(){
+		int mask = 0;
+		if(isEmpty())
+			for(Byte v : legal) mask |= 1 << (v-1);
+		return mask;
+	}
+	
+	/**
+	 * Segnala il valore dato come illegale, se il blocco è vuoto. Se il blocco resta senza
+	 * valori legali l'istanza viene segnata come contraddittoria.
 	 * 
 	 * @param val Valore da segnare come illegale.
 	 */
 	protected void declareIllegal(int val){
-		if(isEmpty()) legal.remove((byte) val);
+		if(isEmpty() && legal.remove((byte) val)){
+			if(s.trail != null) s.trail.illegal(this, val);
+			if(legal.isEmpty()) s.contradiction = true;
+		}
 	}
 	
 	/**
@@ -186,6 +201,7 @@ public class Block{
 				if(reg.isLegal(i) && r.isLegal(i) && c.isLegal(i))
 					declareLegal(i);
 			}
+			if(legal.isEmpty()) s.contradiction = true;
 		}
 	}
 	
@@ -237,18 +253,39 @@ public class Block{
 	 */
 	public void setVal(int val){
 		if(isEmpty() && (c.isLegal(val) && r.isLegal(val) && reg.isLegal(val))) { 
+			// il blocco viene riempito prima di propagare, cosi' non toglie val a se stesso.
+			this.valore = (byte) val;
+			s.hash ^= Geometry.STANDARD.zobrist(Y*9 + X, val);
 			c.setIllegal(val);
 			r.setIllegal(val);
 			reg.setIllegal(val);
 			c.setIllegalToAllBlockInColumn(val);
 			r.setIllegalToAllBlockInRow(val);
 			reg.setIllegalToAllBlockInRegion(val);
-			this.valore = (byte) val;
 			reg.blocksFull++;
+			s.removeEmpty(Y*9 + X);
+			if(s.trail != null) s.trail.assign(this, legal);
 			legal = null;
 			findBlocksWithOneLegalValue();
 		}
 	}
+	
+	/**
+	 * Annulla l'assegnamento fatto da {@link #setVal(int)}, rendendo di nuovo legale il valore
+	 * nella colonna, riga e regione del blocco. Usato da {@link Trail}.
+	 * 
+	 * @param legal Insieme dei valori legali del blocco prima dell'assegnamento.
+	 */
+	void unsetVal(Set<Byte> legal){
+		c.setLegal(valore);
+		r.setLegal(valore);
+		reg.setLegal(valore);
+		reg.blocksFull--;
+		s.restoreEmpty();
+		s.hash ^= Geometry.STANDARD.zobrist(Y*9 + X, valore);
+		this.valore = 0;
+		this.legal = legal;
+	}
 	@Override
 	public boolean equals(Object obj) {
 		Block b = (Block) obj;
@@ -0,0 +1,174 @@
+package psmc.sudokupart;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Forma canonica di un sudoku rispetto alle simmetrie che conservano il numero di soluzioni:
+ * trasposizione, permutazione delle fasce (gruppi di righe di una regione) e delle righe dentro
+ * una fascia, lo stesso per pile e colonne, e rinomina dei valori.
+ * <p>
+ * La forma canonica e' il minimo lessicografico (blocchi vuoti prima dei pieni) tra le trasformazioni
+ * provate, con i valori rinominati nell'ordine in cui compaiono. Per non provare tutte le
+ * trasformazioni (2*6^8 per il 9x9) righe e colonne vengono prima ordinate per invarianti che non
+ * dipendono dalla trasformazione: numero di valori della riga e somma dei quadrati dei valori presenti
+ * nelle colonne che tocca; le fasce per gli invarianti ordinati delle loro righe. Si provano solo le
+ * permutazioni tra righe, fasce, colonne e pile con gli stessi invarianti, quindi sudoku equivalenti
+ * hanno la stessa forma.
+ * <p>
+ * Se le trasformazioni con invarianti uguali sono piu' di {@link #MAX_ORDERS}, ad esempio per un
+ * sudoku quasi vuoto, se ne provano solo le prime: la forma resta quella di una trasformazione del
+ * sudoku, e quindi ha le stesse soluzioni, ma sudoku equivalenti potrebbero averne di diverse.
+ *
+ * @author  Mattia Paolacci
+ */
+public final class Canonical {
+
+	/**
+	 * Ordinamenti di righe (e di colonne) provati al piu' per ogni orientamento.
+	 */
+	public static final int MAX_ORDERS = 256;
+
+	private Canonical(){}
+
+	/**
+	 * @param grid valori dei blocchi, indicizzati per y*N+x, 0 se vuoto.
+	 * @return La forma canonica di grid, un nuovo array.
+	 * @throws IllegalArgumentException se la lunghezza di grid non corrisponde ad una geometria supportata.
+	 */
+	public static int[] of(int[] grid){
+		Geometry g = Geometry.forCells(grid.length);
+		if(g == null) throw new IllegalArgumentException("numero di blocchi non supportato: "+grid.length);
+		int n = g.getSize();
+		int[] transposed = new int[grid.length];
+		for(int r = 0; r<n; r++)
+			for(int c = 0; c<n; c++) transposed[c*n + r] = grid[r*n + c];
+
+		int[] best = null;
+		for(int[] t : new int[][]{ grid, transposed }){
+			long[] rowKey = lineKeys(t, n, true), colKey = lineKeys(t, n, false);
+			List<int[]> rows = orders(rowKey, g.getBox()), cols = orders(colKey, g.getBox());
+			for(int[] ro : rows)
+				for(int[] co : cols) best = min(t, n, ro, co, best);
+		}
+		return best;
+	}
+
+	/**
+	 * Invarianti delle righe (o delle colonne) di t: il numero di valori della riga e la somma dei
+	 * quadrati dei numeri di valori delle colonne dei suoi blocchi pieni.
+	 */
+	private static long[] lineKeys(int[] t, int n, boolean rows){
+		int[] rowCount = new int[n], colCount = new int[n];
+		for(int r = 0; r<n; r++)
+			for(int c = 0; c<n; c++)
+				if(t[r*n + c] != 0){
+					rowCount[r]++;
+					colCount[c]++;
+				}
+		long[] key = new long[n];
+		for(int i = 0; i<n; i++){
+			long sum = 0;
+			for(int j = 0; j<n; j++){
+				int v = rows ? t[i*n + j] : t[j*n + i];
+				int other = rows ? colCount[j] : rowCount[j];
+				if(v != 0) sum += (long) other * other;
+			}
+			key[i] = (long) (rows ? rowCount[i] : colCount[i]) << 32 | sum;
+		}
+		return key;
+	}
+
+	/**
+	 * @return Gli ordinamenti delle linee da provare: fasce ordinate per invarianti, linee ordinate
+	 * dentro ogni fascia, con ogni permutazione tra elementi con invarianti uguali; al piu' {@link #MAX_ORDERS}.
+	 */
+	private static List<int[]> orders(long[] key, int box){
+		// invarianti di una fascia: quelli delle sue linee, ordinati.
+		long[][] bandKey = new long[box][];
+		for(int band = 0; band<box; band++){
+			bandKey[band] = Arrays.copyOfRange(key, band*box, band*box + box);
+			Arrays.sort(bandKey[band]);
+		}
+		List<int[]> bandOrders = arrangements(box, (a, b) -> Arrays.compare(bandKey[a], bandKey[b]));
+		List<List<int[]>> lineOrders = new ArrayList<List<int[]>>();
+		for(int band = 0; band<box; band++){
+			int base = band*box;
+			lineOrders.add(arrangements(box, (a, b) -> Long.compare(key[base+a], key[base+b])));
+		}
+		List<int[]> out = new ArrayList<int[]>();
+		for(int[] bo : bandOrders) combine(bo, lineOrders, 0, new int[box*box], box, out);
+		return out;
+	}
+
+	/**
+	 * Aggiunge ad out le combinazioni degli ordinamenti delle linee dentro le fasce, nell'ordine di fasce bo.
+	 */
+	private static void combine(int[] bo, List<List<int[]>> lineOrders, int p, int[] order, int box, List<int[]> out){
+		if(out.size() >= MAX_ORDERS) return;
+		if(p == box){
+			out.add(order.clone());
+			return;
+		}
+		int band = bo[p];
+		for(int[] lo : lineOrders.get(band)){
+			for(int i = 0; i<box; i++) order[p*box + i] = band*box + lo[i];
+			combine(bo, lineOrders, p+1, order, box, out);
+		}
+	}
+
+	/**
+	 * @return Gli ordinamenti di 0..k-1 crescenti secondo cmp, con ogni permutazione degli elementi uguali.
+	 */
+	private static List<int[]> arrangements(int k, Comparator<Integer> cmp){
+		Integer[] sorted = new Integer[k];
+		for(int i = 0; i<k; i++) sorted[i] = i;
+		Arrays.sort(sorted, cmp);
+		List<int[]> out = new ArrayList<int[]>();
+		permuteTies(sorted, 0, cmp, new int[k], new boolean[k], out);
+		return out;
+	}
+
+	private static void permuteTies(Integer[] sorted, int p, Comparator<Integer> cmp, int[] cur, boolean[] used, List<int[]> out){
+		if(out.size() >= MAX_ORDERS) return;
+		if(p == sorted.length){
+			out.add(cur.clone());
+			return;
+		}
+		// in posizione p puo' stare ogni elemento non usato con gli stessi invarianti di sorted[p].
+		for(int i = 0; i<sorted.length; i++){
+			if(used[i] || cmp.compare(sorted[i], sorted[p]) != 0) continue;
+			used[i] = true;
+			cur[p] = sorted[i];
+			permuteTies(sorted, p+1, cmp, cur, used, out);
+			used[i] = false;
+		}
+	}
+
+	/**
+	 * Confronta t con righe ro e colonne co, e valori rinominati in ordine di comparsa, con best.
+	 * @return Il minore dei due.
+	 */
+	private static int[] min(int[] t, int n, int[] ro, int[] co, int[] best){
+		int[] label = new int[n+1];
+		int next = 0;
+		int[] cand = null;
+		for(int i = 0; i<t.length; i++){
+			int v = t[ro[i/n]*n + co[i%n]];
+			if(v != 0){
+				if(label[v] == 0) label[v] = ++next;
+				v = label[v];
+			}
+			if(cand == null){
+				// finche' coincide con best non serve costruire il candidato.
+				if(best != null && v == best[i]) continue;
+				if(best != null && v > best[i]) return best;
+				cand = best == null ? new int[t.length] : Arrays.copyOf(best, t.length);
+			}
+			cand[i] = v;
+		}
+		return cand == null ? best : cand;
+	}
+}
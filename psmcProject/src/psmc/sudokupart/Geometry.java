@@ -0,0 +1,153 @@
+package psmc.sudokupart;
+
+import java.util.SplittableRandom;
+
+/**
+ * Geometria di una matrice di sudoku: indici di riga, colonna e regione di ogni blocco,
+ * blocchi vicini (stessa riga, colonna o regione) e unita' (righe, colonne e regioni).
+ * Le tabelle sono calcolate una sola volta e condivise da tutte le istanze.
+ * <p>
+ * Sono supportati i lati di regione da {@link #MIN_BOX} a {@link #MAX_BOX}: sudoku 9x9, 16x16 e 25x25,
+ * i cui insiemi di valori stanno in una maschera int.
+ *
+ * @author  Mattia Paolacci
+ */
+public final class Geometry {
+
+	/**
+	 * Geometria del sudoku 9x9, con regioni 3x3.
+	 */
+	public static final Geometry STANDARD = new Geometry(3);
+
+	public static final int MIN_BOX = 3, MAX_BOX = 5;
+
+	private static final Geometry[] BY_BOX = { null, null, null, STANDARD, new Geometry(4), new Geometry(5) };
+
+	private final int box;
+	private final int size;
+	private final int cells;
+	private final int[] rowOf, colOf, regionOf;
+	private final int[][] peers;
+	private final int[][] units;
+	/**
+	 * Chiavi di Zobrist: un numero casuale per ogni coppia (blocco, valore), con seme fisso.
+	 */
+	private final long[] zobrist;
+
+	private Geometry(int box){
+		this.box = box;
+		size = box*box;
+		cells = size*size;
+		rowOf = new int[cells];
+		colOf = new int[cells];
+		regionOf = new int[cells];
+		for(int cell = 0; cell<cells; cell++){
+			rowOf[cell] = cell/size;
+			colOf[cell] = cell%size;
+			regionOf[cell] = (rowOf[cell]/box)*box + colOf[cell]/box;
+		}
+		// unita': prima le righe, poi le colonne, poi le regioni.
+		units = new int[3*size][size];
+		int[] fill = new int[3*size];
+		for(int cell = 0; cell<cells; cell++){
+			units[rowOf[cell]][fill[rowOf[cell]]++] = cell;
+			units[size+colOf[cell]][fill[size+colOf[cell]]++] = cell;
+			units[2*size+regionOf[cell]][fill[2*size+regionOf[cell]]++] = cell;
+		}
+		int nPeers = 3*size - 2*box - 1;
+		peers = new int[cells][nPeers];
+		for(int cell = 0; cell<cells; cell++){
+			int n = 0;
+			for(int other = 0; other<cells; other++){
+				if(other != cell && (rowOf[other] == rowOf[cell] || colOf[other] == colOf[cell]
+						|| regionOf[other] == regionOf[cell]))
+					peers[cell][n++] = other;
+			}
+		}
+		SplittableRandom rnd = new SplittableRandom(0x5EED_0000L + box);
+		zobrist = new long[cells*size];
+		for(int i = 0; i<zobrist.length; i++) zobrist[i] = rnd.nextLong();
+	}
+
+	/**
+	 * @param box lato di una regione.
+	 * @return La geometria con regioni box x box.
+	 * @throws IllegalArgumentException se box non e' supportato.
+	 */
+	public static Geometry ofBox(int box){
+		if(box < MIN_BOX || box > MAX_BOX)
+			throw new IllegalArgumentException("lato di regione non supportato: "+box);
+		return BY_BOX[box];
+	}
+
+	/**
+	 * @param cells numero di blocchi della matrice.
+	 * @return La geometria con quel numero di blocchi, null se non e' supportata.
+	 */
+	public static Geometry forCells(int cells){
+		for(int box = MIN_BOX; box<=MAX_BOX; box++)
+			if(BY_BOX[box].cells == cells) return BY_BOX[box];
+		return null;
+	}
+
+	/**
+	 * @param size lato della matrice.
+	 * @return La geometria con quel lato, null se non e' supportata.
+	 */
+	public static Geometry forSize(int size){
+		for(int box = MIN_BOX; box<=MAX_BOX; box++)
+			if(BY_BOX[box].size == size) return BY_BOX[box];
+		return null;
+	}
+
+	/**
+	 * @return Il lato di una regione, 3 per il sudoku 9x9.
+	 */
+	public int getBox(){ return box; }
+
+	/**
+	 * @return Il lato della matrice, ossia il numero di valori possibili.
+	 */
+	public int getSize(){ return size; }
+
+	/**
+	 * @return Il numero di blocchi della matrice.
+	 */
+	public int getCells(){ return cells; }
+
+	/**
+	 * @return La maschera con tutti i valori legali.
+	 */
+	public int getAll(){ return (1 << size) - 1; }
+
+	public int row(int cell){ return rowOf[cell]; }
+
+	public int col(int cell){ return colOf[cell]; }
+
+	public int region(int cell){ return regionOf[cell]; }
+
+	/**
+	 * @param cell indice del blocco.
+	 * @return Gli indici dei blocchi nella stessa riga, colonna o regione. L'array e' condiviso, non va modificato.
+	 */
+	public int[] getPeers(int cell){ return peers[cell]; }
+
+	/**
+	 * @param cell indice del blocco.
+	 * @param val valore, da 1 a N.
+	 * @return La chiave di Zobrist del valore val nel blocco cell: lo XOR delle chiavi dei blocchi
+	 * pieni identifica lo stato dell'istanza, vedi {@link SudokuBoard#getHash()}.
+	 */
+	public long zobrist(int cell, int val){ return zobrist[cell*size + val-1]; }
+
+	/**
+	 * @return Il numero di unita': righe, colonne e regioni.
+	 */
+	public int getUnits(){ return units.length; }
+
+	/**
+	 * @param unit indice dell'unita': [0,size) righe, [size,2*size) colonne, [2*size,3*size) regioni.
+	 * @return Gli indici dei blocchi dell'unita'. L'array e' condiviso, non va modificato.
+	 */
+	public int[] getUnit(int unit){ return units[unit]; }
+}
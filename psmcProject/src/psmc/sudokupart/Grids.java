@@ -0,0 +1,127 @@
+package psmc.sudokupart;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Conversioni tra le rappresentazioni testuali di un sudoku e l'array dei valori dei blocchi,
+ * indicizzato per y*N+x, con 0 per i blocchi vuoti.
+ * <p>
+ * Ogni blocco e' un carattere: "." o "0" se vuoto, le cifre da 1 a 9 e poi le lettere, maiuscole
+ * o minuscole, per i valori da 10 in su (A=10, ..., P=25), cosi' da rappresentare anche i sudoku
+ * 16x16 e 25x25, vedi {@link Geometry}.
+ *
+ * @author  Mattia Paolacci
+ */
+public final class Grids {
+
+	private Grids(){}
+
+	/**
+	 * Legge un sudoku nel formato a 9 righe da 9 caratteri; un "." rappresenta un blocco vuoto.
+	 *
+	 * @param f {@link Reader} con il sudoku.
+	 * @return I valori dei blocchi.
+	 * @throws IOException
+	 */
+	public static int[] readRows(Reader f) throws IOException {
+		int[] grid = new int[81];
+		BufferedReader b = new BufferedReader(f);
+		String row;
+		for(int i = 0; i<9; i++){
+			row = b.readLine();
+			for(int j = 0; j<9; j++){
+				if(row.charAt(j)!='.') grid[i*9+j] = Character.getNumericValue(row.charAt(j));
+			}
+		}
+		return grid;
+	}
+
+	/**
+	 * @param c carattere di un blocco.
+	 * @return Il valore rappresentato da c, 0 per un blocco vuoto, -1 se c non rappresenta un blocco.
+	 */
+	public static int charValue(int c){
+		if(c >= '1' && c <= '9') return c - '0';
+		if(c == '.' || c == '0') return 0;
+		if(c >= 'A' && c <= 'Z') return c - 'A' + 10;
+		if(c >= 'a' && c <= 'z') return c - 'a' + 10;
+		return -1;
+	}
+
+	/**
+	 * @param v valore di un blocco, 0 se vuoto.
+	 * @return Il carattere che rappresenta v.
+	 */
+	public static char valueChar(int v){
+		if(v == 0) return '.';
+		if(v <= 9) return (char) ('0'+v);
+		return (char) ('A'+v-10);
+	}
+
+	/**
+	 * Legge un sudoku nel formato a una riga, con un carattere per blocco: 81 per il 9x9,
+	 * 256 per il 16x16, 625 per il 25x25.
+	 *
+	 * @param line riga con il sudoku.
+	 * @return I valori dei blocchi; la lunghezza dell'array e' il numero di blocchi.
+	 * @throws IllegalArgumentException se la lunghezza della riga non corrisponde ad una geometria
+	 * supportata o se contiene caratteri non validi.
+	 */
+	public static int[] parseLine(CharSequence line){
+		Geometry g = Geometry.forCells(line.length());
+		if(g == null)
+			throw new IllegalArgumentException("attesi 81, 256 o 625 caratteri, trovati "+line.length());
+		int[] grid = new int[line.length()];
+		for(int i = 0; i<grid.length; i++){
+			char ch = line.charAt(i);
+			int v = charValue(ch);
+			if(v < 0 || v > g.getSize())
+				throw new IllegalArgumentException("carattere non valido '"+ch+"' in posizione "+i);
+			grid[i] = v;
+		}
+		return grid;
+	}
+
+	/**
+	 * @param s istanza di sudoku.
+	 * @return L'istanza nel formato a una riga, con "." per i blocchi vuoti.
+	 */
+	public static String toLine(SudokuBoard s){
+		int cells = s.getGeometry().getCells();
+		StringBuilder sb = new StringBuilder(cells);
+		for(int cell = 0; cell<cells; cell++) sb.append(valueChar(s.getVal(cell)));
+		return sb.toString();
+	}
+
+	/**
+	 * @param s istanza di sudoku.
+	 * @return I valori dei blocchi, un byte per blocco, indicizzati come le celle di s.
+	 */
+	public static byte[] snapshot(SudokuBoard s){
+		byte[] grid = new byte[s.getGeometry().getCells()];
+		for(int cell = 0; cell<grid.length; cell++) grid[cell] = (byte) s.getVal(cell);
+		return grid;
+	}
+
+	/**
+	 * @param grid valori dei blocchi, come restituiti da {@link #snapshot(SudokuBoard)}.
+	 * @return Il sudoku nel formato a una riga, con "." per i blocchi vuoti.
+	 */
+	public static String toLine(byte[] grid){
+		StringBuilder sb = new StringBuilder(grid.length);
+		for(int cell = 0; cell<grid.length; cell++) sb.append(valueChar(grid[cell]));
+		return sb.toString();
+	}
+
+	/**
+	 * @param grid valori dei blocchi, indicizzati per y*N+x, 0 se vuoto.
+	 * @return Il sudoku nel formato a una riga, con "." per i blocchi vuoti.
+	 */
+	public static String toLine(int[] grid){
+		StringBuilder sb = new StringBuilder(grid.length);
+		for(int cell = 0; cell<grid.length; cell++) sb.append(valueChar(grid[cell]));
+		return sb.toString();
+	}
+}
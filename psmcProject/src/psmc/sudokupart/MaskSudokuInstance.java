@@ -0,0 +1,335 @@
+package psmc.sudokupart;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Istanza di sudoku rappresentata con soli array di primitivi, alternativa a {@link SudokuInstance}.
+ * <p>
+ * Ogni blocco ha una maschera di N bit con i valori legali (il bit v-1 rappresenta il valore v);
+ * righe, colonne e regioni hanno una maschera dei valori gia' usati. In questo modo una copia
+ * dell'istanza costa pochi array, invece di 81 {@link Block} con i rispettivi insiemi.
+ * <p>
+ * La dimensione della matrice e' data dalla {@link Geometry}: oltre al 9x9 sono supportati
+ * il 16x16 e il 25x25.
+ *
+ * @author  Mattia Paolacci
+ */
+public class MaskSudokuInstance implements SudokuBoard {
+
+	private final Geometry g;
+
+	/**
+	 * Maschera con tutti i valori da 1 a N.
+	 */
+	private final int all;
+
+	/**
+	 * Valori dei blocchi, 0 se il blocco e' vuoto.
+	 */
+	private final byte[] valori;
+
+	/**
+	 * Maschere dei valori legali per ogni blocco; 0 se il blocco e' pieno.
+	 */
+	private final int[] legal;
+
+	/**
+	 * Maschere dei valori usati in ogni riga, colonna e regione.
+	 */
+	private final int[] rowUsed, colUsed, regUsed;
+
+	/**
+	 * Numero di blocchi pieni.
+	 */
+	private int blocksFull;
+
+	/**
+	 * Hash di Zobrist dei valori, vedi {@link #getHash()}.
+	 */
+	private long hash;
+
+	/**
+	 * Indice dell'ultimo blocco restituito da {@link #getFirstEmptyCell()}, 0 se mai chiamata.
+	 * I blocchi che lo precedono sono pieni.
+	 */
+	private int lastGivenBlock;
+
+	/**
+	 * Blocchi vuoti: sono i primi emptyCount elementi di emptyCells, e emptyPos[cella] e' la posizione
+	 * della cella in emptyCells. Un blocco riempito viene scambiato con l'ultimo vuoto, cosi' che
+	 * annullare l'assegnamento (in ordine inverso) richieda solo di incrementare emptyCount.
+	 */
+	private final int[] emptyCells, emptyPos;
+	private int emptyCount;
+
+	/**
+	 * True se un blocco vuoto e' rimasto senza valori legali.
+	 */
+	private boolean contradiction;
+
+	/**
+	 * Registro delle modifiche per la ricerca sul posto; null finche' non viene chiesto un checkpoint.
+	 * Ogni voce contiene il tipo di modifica, l'indice del blocco e la maschera precedente.
+	 */
+	private long[] trail;
+	private int trailSize;
+
+	private static final long MASK = 0L, ASSIGN = 1L, CURSOR = 2L;
+
+	/**
+	 * Costruttore di un istanza di sudoku. Costruisce un sudoku inserendo i valori presenti nel file
+	 * nelle rispettive posizioni. Inoltre se trova un "." lo sostituisce con 0.
+	 *
+	 * @param f	{@link FileReader} file con il sudoku.
+	 * @throws IOException
+	 */
+	public MaskSudokuInstance(FileReader f) throws IOException {
+		this(Grids.readRows(f));
+	}
+
+	/**
+	 * Costruttore di un istanza di sudoku a partire dai valori dei blocchi. La geometria e'
+	 * quella con tanti blocchi quanti gli elementi di grid.
+	 *
+	 * @param grid valori dei blocchi, indicizzati per y*N+x, 0 se vuoto.
+	 * @throws IllegalArgumentException se la lunghezza di grid non corrisponde ad una geometria supportata.
+	 */
+	public MaskSudokuInstance(int[] grid){
+		this(geometryOf(grid));
+		for(int cell = 0; cell<valori.length; cell++){
+			valori[cell] = (byte) grid[cell];
+			if(valori[cell] != 0){
+				blocksFull++;
+				hash ^= g.zobrist(cell, grid[cell]);
+			}
+		}
+		for(int cell = 0; cell<valori.length; cell++){
+			if(valori[cell] == 0){
+				emptyPos[cell] = emptyCount;
+				emptyCells[emptyCount++] = cell;
+			}
+		}
+	}
+
+	private static Geometry geometryOf(int[] grid){
+		Geometry g = Geometry.forCells(grid.length);
+		if(g == null) throw new IllegalArgumentException("numero di blocchi non supportato: "+grid.length);
+		return g;
+	}
+
+	/**
+	 * Costruttore. Crea un'istanza vuota.
+	 */
+	private MaskSudokuInstance(Geometry g){
+		this.g = g;
+		all = g.getAll();
+		int cells = g.getCells(), size = g.getSize();
+		valori = new byte[cells];
+		legal = new int[cells];
+		rowUsed = new int[size];
+		colUsed = new int[size];
+		regUsed = new int[size];
+		emptyCells = new int[cells];
+		emptyPos = new int[cells];
+	}
+
+	/**
+	 * Costruttore di copia.
+	 * @param o istanza da copiare.
+	 */
+	private MaskSudokuInstance(MaskSudokuInstance o){
+		g = o.g;
+		all = o.all;
+		valori = o.valori.clone();
+		legal = o.legal.clone();
+		rowUsed = o.rowUsed.clone();
+		colUsed = o.colUsed.clone();
+		regUsed = o.regUsed.clone();
+		blocksFull = o.blocksFull;
+		hash = o.hash;
+		emptyCells = o.emptyCells.clone();
+		emptyPos = o.emptyPos.clone();
+		emptyCount = o.emptyCount;
+		contradiction = o.contradiction;
+		lastGivenBlock = o.lastGivenBlock;
+	}
+
+	@Override
+	public void findLegalValue(){
+		// Cerca valori illegali nelle righe, colonne e regioni.
+		for(int cell = 0; cell<valori.length; cell++){
+			if(valori[cell] == 0) continue;
+			int bit = 1 << (valori[cell]-1);
+			rowUsed[g.row(cell)] |= bit;
+			colUsed[g.col(cell)] |= bit;
+			regUsed[g.region(cell)] |= bit;
+		}
+		// Cerca i valori legali per i blocchi.
+		for(int cell = 0; cell<valori.length; cell++){
+			if(valori[cell] == 0){
+				legal[cell] = all & ~(rowUsed[g.row(cell)] | colUsed[g.col(cell)] | regUsed[g.region(cell)]);
+				if(legal[cell] == 0) contradiction = true;
+			}
+		}
+	}
+
+	@Override
+	public void findBlockWithOneLegalValue(){
+		for(int cell = 0; cell<valori.length; cell++){
+			if(Integer.bitCount(legal[cell]) == 1)
+				setVal(cell, Integer.numberOfTrailingZeros(legal[cell])+1);
+		}
+	}
+
+	@Override
+	public int getFirstEmptyCell(){
+		// Parte dall'ultimo blocco restituito, o da (0,0).
+		for(int cell = lastGivenBlock; cell<valori.length; cell++){
+			if(valori[cell] == 0){
+				lastGivenBlock = cell;
+				return cell;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int getVal(int cell){ return valori[cell]; }
+
+	@Override
+	public int getLegalMask(int cell){ return legal[cell]; }
+
+	@Override
+	public int getDimSetLegalSol(int cell){ return Integer.bitCount(legal[cell]); }
+
+	/**
+	 * Se il blocco e' vuoto e val e' legale nella sua riga, colonna e regione, imposta val come
+	 * valore del blocco togliendolo dai valori legali degli altri blocchi. Poi, come
+	 * {@link Block#setVal(int)}, imposta i blocchi vicini rimasti con un solo valore legale.
+	 */
+	@Override
+	public void setVal(int cell, int val){
+		int bit = 1 << (val-1);
+		int r = g.row(cell), c = g.col(cell), reg = g.region(cell);
+		if(valori[cell] != 0 || ((rowUsed[r] | colUsed[c] | regUsed[reg]) & bit) != 0) return;
+		rowUsed[r] |= bit;
+		colUsed[c] |= bit;
+		regUsed[reg] |= bit;
+		valori[cell] = (byte) val;
+		hash ^= g.zobrist(cell, val);
+		if(trail != null){
+			record(MASK, cell, legal[cell]);
+			record(ASSIGN, cell, 0);
+		}
+		legal[cell] = 0;
+		blocksFull++;
+		removeEmpty(cell);
+		int[] peers = g.getPeers(cell);
+		for(int i = 0; i<peers.length; i++){
+			int p = peers[i];
+			if((legal[p] & bit) != 0){
+				if(trail != null) record(MASK, p, legal[p]);
+				legal[p] &= ~bit;
+				if(legal[p] == 0) contradiction = true;
+			}
+		}
+		// Imposta i vicini con un solo valore legale.
+		for(int i = 0; i<peers.length; i++){
+			int l = legal[peers[i]];
+			if(l != 0 && (l & (l-1)) == 0)
+				setVal(peers[i], Integer.numberOfTrailingZeros(l)+1);
+		}
+	}
+
+	@Override
+	public void eliminate(int cell, int val){
+		int bit = 1 << (val-1);
+		if((legal[cell] & bit) == 0) return;
+		if(trail != null) record(MASK, cell, legal[cell]);
+		legal[cell] &= ~bit;
+		if(legal[cell] == 0) contradiction = true;
+	}
+
+	/**
+	 * Toglie il blocco dall'insieme dei blocchi vuoti, scambiandolo con l'ultimo.
+	 */
+	private void removeEmpty(int cell){
+		int p = emptyPos[cell];
+		int last = emptyCells[--emptyCount];
+		emptyCells[p] = last;
+		emptyPos[last] = p;
+		emptyCells[emptyCount] = cell;
+		emptyPos[cell] = emptyCount;
+	}
+
+	@Override
+	public boolean isComplete(){ return emptyCount == 0; }
+
+	@Override
+	public int getUsedValues(){
+		// ogni valore presente sta in una riga.
+		int used = 0;
+		for(int r = 0; r<rowUsed.length; r++) used |= rowUsed[r];
+		return used;
+	}
+
+	@Override
+	public long getHash(){ return hash; }
+
+	@Override
+	public boolean hasContradiction(){ return contradiction; }
+
+	@Override
+	public int getEmptyCount(){ return emptyCount; }
+
+	@Override
+	public int getEmptyCell(int i){ return emptyCells[i]; }
+
+	private void record(long kind, int cell, int mask){
+		if(trailSize == trail.length) trail = Arrays.copyOf(trail, trailSize*2);
+		trail[trailSize++] = (kind << 56) | ((long) cell << 32) | (mask & 0xFFFFFFFFL);
+	}
+
+	@Override
+	public int checkpoint(){
+		if(trail == null) trail = new long[256];
+		int mark = trailSize;
+		record(CURSOR, lastGivenBlock, contradiction ? 1 : 0);
+		return mark;
+	}
+
+	@Override
+	public void rollback(int checkpoint){
+		while(trailSize > checkpoint){
+			long e = trail[--trailSize];
+			int cell = (int) ((e >>> 32) & 0xFFFFFF);
+			long kind = e >>> 56;
+			if(kind == MASK) legal[cell] = (int) e;
+			else if(kind == ASSIGN){
+				int bit = 1 << (valori[cell]-1);
+				rowUsed[g.row(cell)] &= ~bit;
+				colUsed[g.col(cell)] &= ~bit;
+				regUsed[g.region(cell)] &= ~bit;
+				hash ^= g.zobrist(cell, valori[cell]);
+				valori[cell] = 0;
+				blocksFull--;
+				emptyCount++;
+			}
+			else {
+				lastGivenBlock = cell;
+				contradiction = (int) e != 0;
+			}
+		}
+	}
+
+	@Override
+	public MaskSudokuInstance clona(){ return new MaskSudokuInstance(this); }
+
+	@Override
+	public int fillRate(){ return (blocksFull*100)/valori.length; }
+
+	@Override
+	public Geometry getGeometry(){ return g; }
+}
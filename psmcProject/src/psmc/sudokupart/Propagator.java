@@ -0,0 +1,198 @@
+package psmc.sudokupart;
+
+/**
+ * Propagazione dei vincoli dopo un assegnamento, fino al punto fisso, con livelli crescenti:
+ * <ul>
+ * <li>{@link #NAKED_SINGLES}: solo i blocchi con un solo valore legale, gia' impostati da
+ * {@link SudokuBoard#setVal(int, int)};</li>
+ * <li>{@link #HIDDEN_SINGLES}: in piu' i valori che in una riga, colonna o regione hanno un solo
+ * blocco possibile;</li>
+ * <li>{@link #LOCKED_CANDIDATES}: in piu' le eliminazioni per candidati bloccati: se in una regione un
+ * valore e' possibile solo in una riga (o colonna), viene tolto dal resto di quella riga (pointing);
+ * se in una riga o colonna e' possibile solo in una regione, viene tolto dal resto della regione (claiming).</li>
+ * </ul>
+ * Lavora solo attraverso {@link SudokuBoard}, quindi le modifiche sono annullabili con
+ * {@link SudokuBoard#rollback(int)} come quelle di setVal.
+ *
+ * @author  Mattia Paolacci
+ */
+public final class Propagator {
+
+	public static final Propagator NAKED_SINGLES = new Propagator(0, "naked");
+	public static final Propagator HIDDEN_SINGLES = new Propagator(1, "hidden");
+	public static final Propagator LOCKED_CANDIDATES = new Propagator(2, "locked");
+
+	private final int level;
+	private final String name;
+
+	private Propagator(int level, String name){
+		this.level = level;
+		this.name = name;
+	}
+
+	/**
+	 * @param name nome del livello: naked, hidden o locked.
+	 * @return Il propagatore del livello dato, null se il nome non e' noto.
+	 */
+	public static Propagator forName(String name){
+		if(name.equals(NAKED_SINGLES.name)) return NAKED_SINGLES;
+		if(name.equals(HIDDEN_SINGLES.name)) return HIDDEN_SINGLES;
+		if(name.equals(LOCKED_CANDIDATES.name)) return LOCKED_CANDIDATES;
+		return null;
+	}
+
+	/**
+	 * Applica le regole del livello finche' modificano l'istanza.
+	 *
+	 * @param s istanza da propagare.
+	 * @return false se l'istanza e' contraddittoria, o se un valore non ha posto in una riga,
+	 * colonna o regione.
+	 */
+	public boolean propagate(SudokuBoard s){
+		if(s.hasContradiction()) return false;
+		if(level == 0) return true;
+		boolean changed = true;
+		while(changed){
+			changed = false;
+			int r = hiddenSingles(s);
+			if(r < 0) return false;
+			if(r > 0){
+				changed = true;
+				continue;
+			}
+			if(level >= 2 && lockedCandidates(s)){
+				if(s.hasContradiction()) return false;
+				nakedSingles(s);
+				if(s.hasContradiction()) return false;
+				changed = true;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Imposta i valori che in un'unita' hanno un solo blocco possibile.
+	 * @return -1 se l'istanza e' contraddittoria, altrimenti il numero di blocchi impostati.
+	 */
+	private static int hiddenSingles(SudokuBoard s){
+		Geometry g = s.getGeometry();
+		int all = g.getAll();
+		int set = 0;
+		for(int u = 0; u<g.getUnits(); u++){
+			int[] unit = g.getUnit(u);
+			int once = 0, twice = 0, placed = 0;
+			for(int i = 0; i<unit.length; i++){
+				int v = s.getVal(unit[i]);
+				if(v != 0){
+					placed |= 1 << (v-1);
+					continue;
+				}
+				int m = s.getLegalMask(unit[i]);
+				twice |= once & m;
+				once |= m;
+			}
+			if((once | placed) != all) return -1;
+			int hidden = once & ~twice & ~placed;
+			while(hidden != 0){
+				int bit = hidden & -hidden;
+				hidden &= hidden-1;
+				for(int i = 0; i<unit.length; i++){
+					if((s.getLegalMask(unit[i]) & bit) != 0){
+						s.setVal(unit[i], Integer.numberOfTrailingZeros(bit)+1);
+						set++;
+						break;
+					}
+				}
+				if(s.hasContradiction()) return -1;
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * Applica le eliminazioni per candidati bloccati in tutte le unita'.
+	 * @return true se almeno un valore e' stato tolto.
+	 */
+	private static boolean lockedCandidates(SudokuBoard s){
+		Geometry g = s.getGeometry();
+		int size = g.getSize();
+		boolean changed = false;
+		int[] masks = new int[size];
+		for(int u = 0; u<g.getUnits(); u++){
+			int[] unit = g.getUnit(u);
+			boolean region = u >= 2*size;
+			int union = 0;
+			for(int i = 0; i<unit.length; i++){
+				masks[i] = s.getLegalMask(unit[i]);
+				union |= masks[i];
+			}
+			while(union != 0){
+				int bit = union & -union;
+				union &= union-1;
+				int v = Integer.numberOfTrailingZeros(bit)+1;
+				int first = -1;
+				boolean sameRow = true, sameCol = true, sameRegion = true;
+				for(int i = 0; i<unit.length; i++){
+					if((masks[i] & bit) == 0) continue;
+					if(first < 0) first = unit[i];
+					else {
+						sameRow &= g.row(unit[i]) == g.row(first);
+						sameCol &= g.col(unit[i]) == g.col(first);
+						sameRegion &= g.region(unit[i]) == g.region(first);
+					}
+				}
+				if(first < 0) continue;
+				if(region){
+					// pointing: il valore della regione sta in una sola riga o colonna.
+					if(sameRow) changed |= eliminateOutside(s, g.getUnit(g.row(first)), g, v, u);
+					if(sameCol) changed |= eliminateOutside(s, g.getUnit(size+g.col(first)), g, v, u);
+				}
+				// claiming: il valore della riga o colonna sta in una sola regione.
+				else if(sameRegion) changed |= eliminateOutside(s, g.getUnit(2*size+g.region(first)), g, v, u);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Toglie v dai blocchi di target che non fanno parte dell'unita' source.
+	 * @return true se almeno un valore e' stato tolto.
+	 */
+	private static boolean eliminateOutside(SudokuBoard s, int[] target, Geometry g, int v, int source){
+		int size = g.getSize();
+		int bit = 1 << (v-1);
+		boolean changed = false;
+		for(int i = 0; i<target.length; i++){
+			int cell = target[i];
+			if((s.getLegalMask(cell) & bit) == 0) continue;
+			boolean inSource = source < size ? g.row(cell) == source
+					: source < 2*size ? g.col(cell) == source-size
+					: g.region(cell) == source-2*size;
+			if(inSource) continue;
+			s.eliminate(cell, v);
+			changed = true;
+		}
+		return changed;
+	}
+
+	/**
+	 * Imposta i blocchi rimasti con un solo valore legale dopo le eliminazioni.
+	 * @return true se almeno un blocco e' stato impostato.
+	 */
+	private static boolean nakedSingles(SudokuBoard s){
+		boolean changed = false;
+		for(int i = s.getEmptyCount()-1; i>=0; i--){
+			if(i >= s.getEmptyCount()) continue;
+			int cell = s.getEmptyCell(i);
+			int m = s.getLegalMask(cell);
+			if(m != 0 && (m & (m-1)) == 0){
+				s.setVal(cell, Integer.numberOfTrailingZeros(m)+1);
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	@Override
+	public String toString(){ return name; }
+}
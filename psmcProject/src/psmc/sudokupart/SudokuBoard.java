@@ -0,0 +1,186 @@
+package psmc.sudokupart;
+
+/**
+ * Operazioni comuni a tutte le rappresentazioni di un'istanza di sudoku, usate dagli
+ * algoritmi di risoluzione sequenziale e parallelo.
+ * <p>
+ * Le celle (blocchi) sono identificate da un indice in [0,N*N), pari a y*N+x, dove N e' il lato
+ * della matrice ({@link Geometry#getSize()}), x e' l'indice di colonna e y quello di riga. I valori legali di un blocco sono restituiti come maschera di bit:
+ * il bit (v-1) e' a 1 se il valore v e' legale.
+ *
+ * @author  Mattia Paolacci
+ */
+public interface SudokuBoard {
+
+	/**
+	 * @return La geometria della matrice.
+	 */
+	default Geometry getGeometry(){ return Geometry.STANDARD; }
+
+	/**
+	 * Inizializza la matrice di sudoku, calcolando i valori legali di ogni blocco.
+	 */
+	void findLegalValue();
+
+	/**
+	 * Ricerca in tutta la matrice blocchi con un solo valore legale, impostandolo.
+	 */
+	void findBlockWithOneLegalValue();
+
+	/**
+	 * Ritorna l'indice del primo blocco vuoto. Assume che l'istanza non sia completa.
+	 * @return indice del blocco vuoto, -1 se l'istanza e' completa.
+	 */
+	int getFirstEmptyCell();
+
+	/**
+	 * @param cell indice del blocco.
+	 * @return Il valore del blocco, 0 se vuoto.
+	 */
+	int getVal(int cell);
+
+	/**
+	 * @param cell indice del blocco.
+	 * @return Maschera dei valori legali del blocco, 0 se il blocco e' pieno.
+	 */
+	int getLegalMask(int cell);
+
+	/**
+	 * @param cell indice del blocco.
+	 * @return Il numero di valori legali del blocco, 0 se il blocco e' pieno.
+	 */
+	int getDimSetLegalSol(int cell);
+
+	/**
+	 * Imposta val come valore del blocco, se vuoto e se val e' legale, propagando
+	 * le conseguenze sui blocchi della stessa riga, colonna e regione.
+	 * @param cell indice del blocco.
+	 * @param val valore da assegnare.
+	 */
+	void setVal(int cell, int val);
+
+	/**
+	 * Toglie val dai valori legali del blocco, se vuoto, senza altra propagazione. La modifica
+	 * viene annullata da {@link #rollback(int)}; se il blocco resta senza valori legali l'istanza
+	 * diventa contraddittoria.
+	 * @param cell indice del blocco.
+	 * @param val valore da togliere.
+	 */
+	void eliminate(int cell, int val);
+
+	/**
+	 * @return true se il sudoku e' risolto, ossia se non ci sono blocchi vuoti.
+	 */
+	boolean isComplete();
+
+	/**
+	 * Flag aggiornato ad ogni rimozione di un valore legale: l'istanza e' contraddittoria se un
+	 * blocco vuoto e' rimasto senza valori legali, e quindi non ha soluzioni.
+	 *
+	 * @return true se l'istanza e' contraddittoria.
+	 */
+	boolean hasContradiction();
+
+	/**
+	 * @return Il numero di blocchi vuoti.
+	 */
+	int getEmptyCount();
+
+	/**
+	 * Accesso indicizzato all'insieme dei blocchi vuoti, in ordine non specificato.
+	 *
+	 * @param i indice in [0, {@link #getEmptyCount()}).
+	 * @return L'indice dell'i-esimo blocco vuoto.
+	 */
+	int getEmptyCell(int i);
+
+	/**
+	 * @return La maschera dei valori presenti in almeno un blocco (il bit v-1 rappresenta il valore v).
+	 */
+	default int getUsedValues(){
+		int used = 0;
+		int cells = getGeometry().getCells();
+		for(int cell = 0; cell<cells; cell++){
+			int v = getVal(cell);
+			if(v != 0) used |= 1 << (v-1);
+		}
+		return used;
+	}
+
+	/**
+	 * @return L'hash di Zobrist dei valori dei blocchi: lo XOR di {@link Geometry#zobrist(int, int)} per
+	 * ogni blocco pieno. Due istanze con gli stessi valori hanno lo stesso hash, qualunque sia l'ordine
+	 * degli assegnamenti. Le implementazioni lo aggiornano ad ogni assegnamento e annullamento.
+	 */
+	default long getHash(){
+		Geometry g = getGeometry();
+		long h = 0;
+		for(int cell = 0; cell<g.getCells(); cell++){
+			int v = getVal(cell);
+			if(v != 0) h ^= g.zobrist(cell, v);
+		}
+		return h;
+	}
+
+	/**
+	 * @return Una copia indipendente dell'istanza.
+	 */
+	SudokuBoard clona();
+
+	/**
+	 * Inizia a registrare le modifiche all'istanza, per poterle annullare con {@link #rollback(int)}.
+	 * Permette di esplorare i rami della ricerca modificando l'istanza sul posto invece di copiarla.
+	 * La copia fatta da {@link #clona()} non eredita il registro.
+	 *
+	 * @return Il checkpoint a cui tornare.
+	 */
+	int checkpoint();
+
+	/**
+	 * Riporta l'istanza allo stato che aveva al momento del checkpoint dato, annullando
+	 * assegnamenti e rimozioni di valori legali fatte dopo di esso.
+	 *
+	 * @param checkpoint valore ritornato da {@link #checkpoint()}.
+	 */
+	void rollback(int checkpoint);
+
+	/**
+	 * Ritorna la dimensione dello spazio delle soluzioni dell'istanza di sudoku,
+	 * ossia il prodotto del numero di candidati di ogni cella vuota.
+	 *
+	 * @return Una stringa nella forma mantissa*10^esponente.
+	 */
+	default String solutionSpace(){
+		// mantissa
+		float mant = 1;
+		// esponente
+		int exp = 0;
+		for(int cell = 0; cell<getGeometry().getCells(); cell++){
+			if(getVal(cell) == 0){
+				mant = mant * getDimSetLegalSol(cell);
+			}
+			while(mant > 10){
+				mant = (float) (mant/10.0);
+				exp++;
+				String s = mant+"";
+				if(s.length() > 7){
+					s = s.substring(0, 5);
+				}
+				mant = Float.parseFloat(s);
+			}
+		}
+		return mant+"*10^"+exp;
+	}
+
+	/**
+	 * Ritorna la percetuale di riempimento del sudoku
+	 * @return percentuale di riempimento
+	 */
+	default int fillRate(){
+		int cells = getGeometry().getCells();
+		int tot = 0;
+		for(int cell = 0; cell<cells; cell++)
+			if(getVal(cell) != 0) tot++;
+		return (tot*100)/cells;
+	}
+}
@@ -1,6 +1,5 @@
 package psmc.sudokupart;
 
-import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.Set;
@@ -11,7 +10,7 @@ import java.util.Set;
  * 
  * @author Mattia Paolacci 
  */
-public class SudokuInstance {
+public class SudokuInstance implements SudokuBoard {
 	
 	/**
 	 * Matrice di oggetti di tipo:{@link Region}, 3x3.
@@ -35,6 +34,30 @@ public class SudokuInstance {
 	 */
 	protected Segnaposto lastGivenBlock;
 	
+	/**
+	 * Registro delle modifiche per la ricerca sul posto; null finche' non viene chiesto un checkpoint.
+	 */
+	Trail trail;
+	
+	/**
+	 * Blocchi vuoti: sono i primi emptyCount elementi di emptyCells, e emptyPos[cella] e' la posizione
+	 * della cella in emptyCells. Un blocco riempito viene scambiato con l'ultimo vuoto, cosi' che 
+	 * annullare l'assegnamento (in ordine inverso) richieda solo di incrementare emptyCount.
+	 */
+	private final int[] emptyCells = new int[81];
+	private final int[] emptyPos = new int[81];
+	private int emptyCount;
+	
+	/**
+	 * True se un blocco vuoto e' rimasto senza valori legali.
+	 */
+	boolean contradiction;
+	
+	/**
+	 * Hash di Zobrist dei valori, aggiornato da {@link Block#setVal(int)}; vedi {@link #getHash()}.
+	 */
+	long hash;
+	
 	/** 
 	 * Costruttore di un istanza di sudoku. Costruisce un sudoku inserendo i valori presenti nel file
 	 * nelle rispettive posizioni. Inoltre se trova un "." lo sostituisce con 0.
@@ -43,6 +66,19 @@ public class SudokuInstance {
 	 * @throws IOException
 	 */
 	public SudokuInstance(FileReader f) throws IOException {
+		this(Grids.readRows(f));
+	}
+	
+	/** 
+	 * Costruttore di un istanza di sudoku a partire dai valori dei blocchi.
+	 * 
+	 * @param grid valori dei blocchi, indicizzati per y*9+x, 0 se vuoto.
+	 * @throws IllegalArgumentException se il sudoku non e' 9x9: le altre dimensioni sono
+	 * supportate solo da {@link MaskSudokuInstance}.
+	 */
+	public SudokuInstance(int[] grid) {
+		if(grid.length != 81)
+			throw new IllegalArgumentException("SudokuInstance supporta solo sudoku 9x9, usare MaskSudokuInstance");
 		
 		// Istanzio la matrice di Regioni
 		for (int i = 0; i<3; i++){
@@ -50,19 +86,14 @@ public class SudokuInstance {
 				regionMatrix[i][j] = new Region();
 			}
 		}
-		BufferedReader b = new BufferedReader(f);
-		String row;
 		for(int i = 0; i<9; i++){
 			//istanzio righe e colonne (vuote)
 			columnsContainer[i] = new Column();
 			rowsContainer[i] = new Row();
 			
 			// Istanzio blocchi nelle regioni
-			row = b.readLine();
-			for(int j = 0; j<9; j++){
-				if(row.charAt(j)!='.') createBlockInRegionMatrix(j, i, Character.getNumericValue(row.charAt(j)));
-				else createBlockInRegionMatrix(j, i, 0);
-			}
+			for(int j = 0; j<9; j++)
+				createBlockInRegionMatrix(j, i, grid[i*9+j]);
 		}
 		// Aggiungo blocchi alle righe e alle colonne.
 		for(int y = 0; y<9; y++){
@@ -71,6 +102,14 @@ public class SudokuInstance {
 				columnsContainer[x].addBlock(getBlock(x, y));
 			}
 		}
+		// Inizializzo l'insieme dei blocchi vuoti.
+		for(int cell = 0; cell<81; cell++){
+			if(getBlock(cell%9, cell/9).isEmpty()){
+				emptyPos[cell] = emptyCount;
+				emptyCells[emptyCount++] = cell;
+			}
+			else hash ^= Geometry.STANDARD.zobrist(cell, grid[cell]);
+		}
 	}
 	
 	/**
@@ -100,11 +139,9 @@ public class SudokuInstance {
 						return getBlock(j, i);
 					}
 		
-		// Altrimenti parte dal segnaposto
+		// Altrimenti parte dal segnaposto: i blocchi che lo precedono sono pieni.
 		int r = lastGivenBlock.getRow();
-		int c = lastGivenBlock.getColumn()+1;
-		// se c >= 9 allora passo alla riga successiva.
-		if(c>=9){ c = 0; r++; }
+		int c = lastGivenBlock.getColumn();
 		while(r<9){
 			Block b = getBlock(c, r);
 			if(b.isEmpty()){
@@ -119,53 +156,69 @@ public class SudokuInstance {
 		return null;
 	}
 	
+	@Override
+	public int getFirstEmptyCell(){
+		Block b = getFirstBlockEmpty();
+		return b == null ? -1 : b.getY()*9 + b.getX();
+	}
+	
+	@Override
+	public boolean hasContradiction(){ return contradiction; }
+	
+	@Override
+	public long getHash(){ return hash; }
+	
+	@Override
+	public int getEmptyCount(){ return emptyCount; }
+	
+	@Override
+	public int getEmptyCell(int i){ return emptyCells[i]; }
+	
 	/**
-	 * Verifica che il sudoku sia risolto.
-	 * @return true se è risolto, false altrimenti.
+	 * Toglie il blocco dall'insieme dei blocchi vuoti.
+	 * @param cell indice del blocco appena riempito.
 	 */
-	public boolean isComplete(){
-		for(int r = 0; r<3; r++){
-			for(int c = 0; c<3; c++){
-				if(!regionMatrix[r][c].isFull()) return false;
-			}
-		}
-		return true;
+	void removeEmpty(int cell){
+		int p = emptyPos[cell];
+		int last = emptyCells[--emptyCount];
+		emptyCells[p] = last;
+		emptyPos[last] = p;
+		emptyCells[emptyCount] = cell;
+		emptyPos[cell] = emptyCount;
 	}
 	
 	/**
-	 * Ritorna la dimensione dello spazio delle soluzioni dell'istanza di sudoku, 
-	 * ossia il prodotto del numero di candidati di ogni cella vuota.
-	 *  
-	 * @return Un intero che rappresenta lo spazio delle soluzioni.
+	 * Rimette nell'insieme dei blocchi vuoti l'ultimo blocco tolto con {@link #removeEmpty(int)}.
 	 */
-	public String solutionSpace(){
-		// mantissa
-		float mant = 1;
-		// esponente
-		int exp = 0;
-		for(int r = 0; r<9; r++){
-			for(int c = 0; c<9; c++){
-				if(getBlock(c, r).isEmpty()){
-					mant = mant * getBlock(c, r).getDimSetLegalSol();
-				}
-				while(mant > 10){
-					mant = (float) (mant/10.0);
-					exp++;
-					String s = mant+"";
-					if(s.length() > 7){ 
-						s = s.substring(0, 5);
-					}
-					mant = Float.parseFloat(s);
-				}
-			}
-		}
-		return mant+"*10^"+exp;
-	}
+	void restoreEmpty(){ emptyCount++; }
+	
+	@Override
+	public int getVal(int cell){ return getBlock(cell%9, cell/9).getVal(); }
+	
+	@Override
+	public int getLegalMask(int cell){ return getBlock(cell%9, cell/9).getLegalMask(); }
+	
+	@Override
+	public int getDimSetLegalSol(int cell){ return getBlock(cell%9, cell/9).getDimSetLegalSol(); }
+	
+	@Override
+	public void setVal(int cell, int val){ getBlock(cell%9, cell/9).setVal(val); }
+
+	@Override
+	public void eliminate(int cell, int val){ getBlock(cell%9, cell/9).declareIllegal(val); }
+	
+	/**
+	 * Verifica che il sudoku sia risolto.
+	 * @return true se è risolto, false altrimenti.
+	 */
+	@Override
+	public boolean isComplete(){ return emptyCount == 0; }
 	
 	/**
 	 * Ritorna la percetuale di riempimento del sudoku
 	 * @return percentuale di riempimento
 	 */
+	@Override
 	public int fillRate(){
 		int tot = 0;
 		for(int i = 0; i<3; i++)
@@ -212,6 +265,7 @@ public class SudokuInstance {
 	 *  Inizializza la matrice di Sudoku, ricercando i valori illegali nelle regioni, colonne e righe e 
 	 *  infine i valori legali per i blocchi.
 	 */
+	@Override
 	public void findLegalValue(){
 		// Cerca valori illegali nelle colonne e righe.
 		for(int i = 0; i<9; i++){
@@ -236,6 +290,7 @@ public class SudokuInstance {
 	 *  Ricerca all'interno di tutta la matrice di sudoku blocchetti con un solo possibile
 	 *  valore legale, impostandolo.
 	 */
+	@Override
 	public void findBlockWithOneLegalValue(){
 		for(int i = 0; i<9; i++){
 			for(int j = 0; j<9; j++){
@@ -244,10 +299,20 @@ public class SudokuInstance {
 		}
 	}
 	
+	@Override
+	public int checkpoint(){
+		if(trail == null) trail = new Trail();
+		return trail.checkpoint(lastGivenBlock, contradiction);
+	}
+	
+	@Override
+	public void rollback(int checkpoint){ trail.rollback(checkpoint, this); }
+	
 	/**
 	 * Ritorna una copia dell'istanza.
 	 * @return {@link SudokuInstance}
 	 */
+	@Override
 	public SudokuInstance clona(){
 		// istanzia un sudoku con le sole regioni, vuote.
 		SudokuInstance s = new SudokuInstance();
@@ -269,6 +334,13 @@ public class SudokuInstance {
 				s.columnsContainer[c].addBlock(s.getBlock(c, r));
 			}
 		}
+		System.arraycopy(emptyCells, 0, s.emptyCells, 0, 81);
+		System.arraycopy(emptyPos, 0, s.emptyPos, 0, 81);
+		s.emptyCount = emptyCount;
+		s.contradiction = contradiction;
+		s.hash = hash;
+		if(lastGivenBlock != null)
+			s.lastGivenBlock = new Segnaposto(lastGivenBlock.getColumn(), lastGivenBlock.getRow());
 		return s;
 	}
 }
@@ -0,0 +1,87 @@
+package psmc.sudokupart;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Registro delle modifiche fatte ad una {@link SudokuInstance}, usato per annullarle
+ * durante la ricerca sul posto (senza copie dell'istanza).
+ * <p>
+ * Vengono registrati i valori tolti dagli insiemi legali dei blocchi, i valori assegnati ai blocchi
+ * e la posizione del segnaposto al momento di un checkpoint. L'annullamento avviene in ordine inverso.
+ *
+ * @author  Mattia Paolacci
+ */
+class Trail {
+
+	private static final byte ILLEGAL = 0;
+	private static final byte ASSIGN = 1;
+	private static final byte CURSOR = 2;
+
+	private byte[] op = new byte[256];
+	private Block[] blocks = new Block[256];
+	private int[] val = new int[256];
+	/**
+	 * Insiemi dei valori legali dei blocchi assegnati, prima dell'assegnamento.
+	 */
+	private Object[] sets = new Object[256];
+	private int size;
+
+	private void push(byte o, Block b, int v, Object set){
+		if(size == op.length){
+			int n = size*2;
+			op = Arrays.copyOf(op, n);
+			blocks = Arrays.copyOf(blocks, n);
+			val = Arrays.copyOf(val, n);
+			sets = Arrays.copyOf(sets, n);
+		}
+		op[size] = o;
+		blocks[size] = b;
+		val[size] = v;
+		sets[size] = set;
+		size++;
+	}
+
+	/**
+	 * Registra che il valore val e' stato tolto dai valori legali del blocco b.
+	 */
+	void illegal(Block b, int v){ push(ILLEGAL, b, v, null); }
+
+	/**
+	 * Registra che al blocco b e' stato assegnato un valore; legal e' il suo insieme di valori legali.
+	 */
+	void assign(Block b, Set<Byte> legal){ push(ASSIGN, b, 0, legal); }
+
+	/**
+	 * Registra la posizione del segnaposto e il flag di contraddizione, e ritorna il checkpoint
+	 * a cui tornare con {@link #rollback(int, SudokuInstance)}.
+	 */
+	int checkpoint(Segnaposto cursor, boolean contradiction){
+		int mark = size;
+		int c = cursor == null ? -1 : cursor.getRow()*9 + cursor.getColumn();
+		push(CURSOR, null, (c+1)*2 + (contradiction ? 1 : 0), null);
+		return mark;
+	}
+
+	/**
+	 * Annulla tutte le modifiche registrate dopo il checkpoint mark.
+	 */
+	@SuppressWarnings("unchecked")
+	void rollback(int mark, SudokuInstance s){
+		while(size > mark){
+			size--;
+			switch(op[size]){
+			case ILLEGAL: blocks[size].declareLegal(val[size]); break;
+			case ASSIGN: blocks[size].unsetVal((Set<Byte>) sets[size]); break;
+			default:
+				s.contradiction = (val[size] & 1) != 0;
+				int c = val[size]/2 - 1;
+				if(c < 0) s.lastGivenBlock = null;
+				else if(s.lastGivenBlock == null) s.lastGivenBlock = new Segnaposto(c%9, c/9);
+				else { s.lastGivenBlock.setColumn(c%9); s.lastGivenBlock.setRow(c/9); }
+			}
+			blocks[size] = null;
+			sets[size] = null;
+		}
+	}
+}